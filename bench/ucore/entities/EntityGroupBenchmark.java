@@ -0,0 +1,85 @@
+package ucore.entities;
+
+import com.badlogic.gdx.utils.Array;
+import ucore.entities.impl.BaseEntity;
+
+/**
+ * Compares adding and removing entities through EntityGroup.updateEvents with the linear removeValue scan it used to do.
+ * Every tick, a random part of the entities is removed and as many new ones are added.
+ * Run with <code>gradlew entityGroupBenchmark</code>. Arguments: entity count, adds and removes per tick, tick count.
+ */
+public class EntityGroupBenchmark{
+
+    public static void main(String[] args){
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int churn = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+        int ticks = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        System.out.println("entities: " + count + ", adds and removes per tick: " + churn + ", ticks: " + ticks);
+
+        //warm up both paths before measuring
+        for(int i = 0; i < 3; i++){
+            run(count, churn, 2, false);
+            run(count, churn, 2, true);
+        }
+
+        long linear = run(count, churn, ticks, false);
+        long group = run(count, churn, ticks, true);
+
+        System.out.printf("removeValue: %.3f ms/tick%n", linear / 1000000f / ticks);
+        System.out.printf("EntityGroup: %.3f ms/tick%n", group / 1000000f / ticks);
+    }
+
+    /** Returns the time spent adding and removing, in nanoseconds. Picking the entities to remove is not timed. */
+    static long run(int count, int churn, int ticks, boolean useGroup){
+        EntityGroup<Dummy> group = new EntityGroup<>(Dummy.class, false);
+        Array<Dummy> array = new Array<>(false, count);
+        Array<Dummy> live = new Array<>(false, count);
+        Array<Dummy> removed = new Array<>(false, churn);
+
+        for(int i = 0; i < count; i++){
+            Dummy d = new Dummy();
+            live.add(d);
+            if(useGroup) group.add(d);
+            else array.add(d);
+        }
+        group.updateEvents();
+
+        long total = 0;
+        for(int t = 0; t < ticks; t++){
+            removed.clear();
+            live.shuffle();
+            for(int i = 0; i < churn && live.size > 0; i++){
+                removed.add(live.pop());
+            }
+
+            long start = System.nanoTime();
+            if(useGroup){
+                for(Dummy d : removed){
+                    group.remove(d);
+                }
+                for(int i = 0; i < removed.size; i++){
+                    Dummy d = new Dummy();
+                    live.add(d);
+                    group.add(d);
+                }
+                group.updateEvents();
+            }else{
+                for(Dummy d : removed){
+                    array.removeValue(d, true);
+                }
+                for(int i = 0; i < removed.size; i++){
+                    Dummy d = new Dummy();
+                    live.add(d);
+                    array.add(d);
+                }
+            }
+            total += System.nanoTime() - start;
+        }
+
+        return total;
+    }
+
+    static class Dummy extends BaseEntity{
+    }
+}
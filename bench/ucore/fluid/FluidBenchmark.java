@@ -0,0 +1,52 @@
+package ucore.fluid;
+
+import java.util.Random;
+
+/**
+ * Compares simulating the same liquid with a GridFluidProvider, which goes through provider methods for every cell,
+ * and an ArrayFluidProvider, which Fluidsim updates through its flat arrays.
+ * Run with <code>gradlew fluidBenchmark</code>. Arguments: grid size, frame count.
+ */
+public class FluidBenchmark{
+
+    public static void main(String[] args){
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        System.out.println("size: " + size + "x" + size + ", frames: " + frames);
+
+        //warm up both paths before measuring
+        for(int i = 0; i < 2; i++){
+            run(new GridFluidProvider(size, size), frames / 2 + 1);
+            run(new ArrayFluidProvider(size, size), frames / 2 + 1);
+        }
+
+        long grid = run(new GridFluidProvider(size, size), frames);
+        long array = run(new ArrayFluidProvider(size, size), frames);
+
+        System.out.printf("grid:  %.3f ms/frame%n", grid / 1000000f / frames);
+        System.out.printf("array: %.3f ms/frame%n", array / 1000000f / frames);
+    }
+
+    /** Fills the provider with random liquid, then returns the time taken to simulate it, in nanoseconds. */
+    static long run(FluidProvider provider, int frames){
+        Random random = new Random(0);
+        int width = provider.getWidth(), height = provider.getHeight();
+
+        for(int x = 0; x < width; x++){
+            for(int y = 0; y < height; y++){
+                if(random.nextFloat() < 0.3f){
+                    provider.setLiquid(x, y, random.nextFloat());
+                }
+            }
+        }
+
+        Fluidsim sim = new Fluidsim(provider);
+
+        long start = System.nanoTime();
+        for(int i = 0; i < frames; i++){
+            sim.simulate();
+        }
+        return System.nanoTime() - start;
+    }
+}
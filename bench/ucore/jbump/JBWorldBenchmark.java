@@ -0,0 +1,70 @@
+package ucore.jbump;
+
+import ucore.jbump.JBCollision.CollisionFilter;
+import ucore.jbump.JBWorld.JBItem;
+
+import java.util.Random;
+
+/**
+ * Measures JBWorld.move() for many small items wandering around a world, which exercises the cell map on every
+ * project, update and move call.
+ * Run with <code>gradlew jbWorldBenchmark</code>. Arguments: item count, frame count, distance moved per frame.
+ */
+public class JBWorldBenchmark{
+    static final float size = 4000f, hitbox = 8f;
+
+    public static void main(String[] args){
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        float speed = args.length > 2 ? Float.parseFloat(args[2]) : 4f;
+
+        System.out.println("items: " + count + ", frames: " + frames + ", speed: " + speed);
+
+        //warm up before measuring
+        for(int i = 0; i < 3; i++){
+            run(count, frames / 3 + 1, speed);
+        }
+
+        long time = run(count, frames, speed);
+
+        System.out.printf("move: %.3f ms/frame%n", time / 1000000f / frames);
+    }
+
+    /** Returns the time spent in move(), in nanoseconds. Picking goals is not timed. */
+    static long run(int count, int frames, float speed){
+        Random random = new Random(0);
+        JBWorld<Object> world = new JBWorld<>();
+        @SuppressWarnings("unchecked")
+        JBItem<Object>[] items = new JBItem[count];
+        float[] xs = new float[count], ys = new float[count], dxs = new float[count], dys = new float[count];
+
+        for(int i = 0; i < count; i++){
+            xs[i] = random.nextFloat() * (size - hitbox);
+            ys[i] = random.nextFloat() * (size - hitbox);
+            float angle = random.nextFloat() * (float) Math.PI * 2f;
+            dxs[i] = (float) Math.cos(angle);
+            dys[i] = (float) Math.sin(angle);
+            items[i] = world.add(new JBItem<>(), xs[i], ys[i], hitbox, hitbox);
+        }
+
+        float[] goalXs = new float[count], goalYs = new float[count];
+        long total = 0;
+        for(int f = 0; f < frames; f++){
+            for(int i = 0; i < count; i++){
+                goalXs[i] = xs[i] + dxs[i] * speed;
+                goalYs[i] = ys[i] + dys[i] * speed;
+                if(goalXs[i] < 0 || goalXs[i] > size - hitbox) dxs[i] = -dxs[i];
+                if(goalYs[i] < 0 || goalYs[i] > size - hitbox) dys[i] = -dys[i];
+            }
+
+            long start = System.nanoTime();
+            for(int i = 0; i < count; i++){
+                JBResponse.Result result = world.move(items[i], goalXs[i], goalYs[i], CollisionFilter.defaultFilter);
+                xs[i] = result.goalX;
+                ys[i] = result.goalY;
+            }
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,98 @@
+package ucore.lights;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import ucore.util.RectQuadTree;
+
+import java.util.Random;
+
+/**
+ * Compares casting light rays through the occluder quadtree, one tree query per ray, with the DDA traversal of OccluderGrid.
+ * Only the casting is measured, so no graphics context is needed.
+ * Run with <code>gradlew raycastBenchmark</code>. Arguments: light count, rays per light, occluder count, frame count.
+ */
+public class RaycastBenchmark{
+    static final float size = 2000f, radius = 300f, occluder = 16f, cellSize = 32f;
+
+    public static void main(String[] args){
+        int lights = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int rays = args.length > 1 ? Integer.parseInt(args[1]) : 128;
+        int occluders = args.length > 2 ? Integer.parseInt(args[2]) : 2000;
+        int frames = args.length > 3 ? Integer.parseInt(args[3]) : 300;
+
+        System.out.println("lights: " + lights + ", rays: " + rays + ", occluders: " + occluders + ", frames: " + frames);
+
+        Random random = new Random(0);
+        Rectangle bounds = new Rectangle(0, 0, size, size);
+        Array<Rectangle> rects = new Array<>();
+        for(int i = 0; i < occluders; i++){
+            rects.add(new Rectangle(random.nextFloat() * (size - occluder), random.nextFloat() * (size - occluder), occluder, occluder));
+        }
+
+        float[] xs = new float[lights], ys = new float[lights];
+        for(int i = 0; i < lights; i++){
+            xs[i] = random.nextFloat() * size;
+            ys[i] = random.nextFloat() * size;
+        }
+
+        RectQuadTree tree = new RectQuadTree(4, bounds);
+        for(Rectangle rect : rects){
+            tree.insert(rect);
+        }
+
+        OccluderGrid grid = new OccluderGrid(cellSize);
+        grid.build(rects, bounds);
+
+        //warm up both paths before measuring
+        for(int i = 0; i < 3; i++){
+            run(tree, null, xs, ys, rays, frames / 3 + 1);
+            run(null, grid, xs, ys, rays, frames / 3 + 1);
+        }
+
+        long treeTime = run(tree, null, xs, ys, rays, frames);
+        long gridTime = run(null, grid, xs, ys, rays, frames);
+
+        System.out.printf("quadtree: %.3f ms/frame%n", treeTime / 1000000f / frames);
+        System.out.printf("grid:     %.3f ms/frame%n", gridTime / 1000000f / frames);
+    }
+
+    /** Casts every ray of every light with either the tree or the grid, and returns the time taken in nanoseconds. */
+    static long run(RectQuadTree tree, OccluderGrid grid, float[] xs, float[] ys, int rays, int frames){
+        Array<Rectangle> candidates = new Array<>();
+        Rectangle query = new Rectangle();
+        float sum = 0f;
+
+        long start = System.nanoTime();
+        for(int f = 0; f < frames; f++){
+            for(int l = 0; l < xs.length; l++){
+                float sx = xs[l], sy = ys[l];
+
+                for(int r = 0; r < rays; r++){
+                    float angle = (float) Math.PI * 2f * r / rays;
+                    float ex = sx + (float) Math.cos(angle) * radius, ey = sy + (float) Math.sin(angle) * radius;
+
+                    if(grid != null){
+                        sum += grid.cast(sx, sy, ex, ey);
+                    }else{
+                        //same query as the quadtree path of RayHandler.raycast
+                        candidates.clear();
+                        query.set(Math.min(sx, ex), Math.min(sy, ey), Math.abs(ex - sx), Math.abs(ey - sy));
+                        tree.getIntersect(candidates, query);
+
+                        float closest = 1f;
+                        for(int i = 0; i < candidates.size; i++){
+                            Rectangle rect = candidates.get(i);
+                            closest = Math.min(closest, OccluderGrid.raycastRect(sx, sy, ex - sx, ey - sy, rect.x, rect.y, rect.width, rect.height));
+                        }
+                        sum += closest;
+                    }
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+
+        //keep the results alive, so that casting cannot be optimized away
+        if(sum < 0) System.out.println(sum);
+        return time;
+    }
+}
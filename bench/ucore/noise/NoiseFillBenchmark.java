@@ -0,0 +1,67 @@
+package ucore.noise;
+
+/**
+ * Compares filling a square field point by point with the batch fill methods of Simplex, RidgedPerlin and VoronoiNoise.
+ * Run with <code>gradlew noiseFillBenchmark</code>. Arguments: field size, run count.
+ */
+public class NoiseFillBenchmark{
+    static final int octaves = 5;
+    static final double persistence = 0.5, scale = 1.0 / 200.0;
+    static final float ridgedFrequency = 1f / 200f;
+    static final double voronoiFrequency = 1.0 / 50.0;
+
+    public static void main(String[] args){
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        System.out.println("size: " + size + "x" + size + ", runs: " + runs);
+
+        Simplex simplex = new Simplex(0);
+        RidgedPerlin ridged = new RidgedPerlin(0, octaves);
+        VoronoiNoise voronoi = new VoronoiNoise(0, (short) 0);
+        float[] out = new float[size * size];
+
+        //warm up both paths before measuring
+        for(int i = 0; i < 3; i++){
+            for(int type = 0; type < 3; type++){
+                run(simplex, ridged, voronoi, type, false, out, 256);
+                run(simplex, ridged, voronoi, type, true, out, 256);
+            }
+        }
+
+        String[] names = {"Simplex", "RidgedPerlin", "VoronoiNoise"};
+        for(int type = 0; type < 3; type++){
+            long single = 0, batch = 0;
+            for(int i = 0; i < runs; i++){
+                single += run(simplex, ridged, voronoi, type, false, out, size);
+                batch += run(simplex, ridged, voronoi, type, true, out, size);
+            }
+
+            System.out.printf("%s per point: %.1f ms/fill%n", names[type], single / 1000000f / runs);
+            System.out.printf("%s fill:      %.1f ms/fill%n", names[type], batch / 1000000f / runs);
+        }
+    }
+
+    /** Fills a field of one noise type and returns the time taken, in nanoseconds. */
+    static long run(Simplex simplex, RidgedPerlin ridged, VoronoiNoise voronoi, int type, boolean batch, float[] out, int size){
+        long start = System.nanoTime();
+
+        if(batch){
+            if(type == 0) simplex.fill(out, 0, 0, size, size, octaves, persistence, scale);
+            else if(type == 1) ridged.fill(out, 0, 0, size, size, ridgedFrequency);
+            else voronoi.fill(out, 0, 0, size, size, voronoiFrequency);
+        }else{
+            for(int y = 0; y < size; y++){
+                for(int x = 0; x < size; x++){
+                    float value;
+                    if(type == 0) value = (float) simplex.octaveNoise2D(octaves, persistence, scale, x, y);
+                    else if(type == 1) value = ridged.getValue(x, y, ridgedFrequency);
+                    else value = (float) voronoi.noise(x, y, voronoiFrequency);
+                    out[x + y * size] = value;
+                }
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,94 @@
+package ucore.util;
+
+import com.badlogic.gdx.math.Rectangle;
+
+import java.util.Random;
+
+/**
+ * Compares rebuilding a quadtree every frame with incremental tracked updates, as done by EntityCollisions.updatePhysics.
+ * Run with <code>gradlew quadTreeBenchmark</code>. Arguments: object count, frame count, distance moved per frame.
+ */
+public class QuadTreeBenchmark{
+    static final float size = 4000f, hitbox = 8f;
+
+    public static void main(String[] args){
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+        float speed = args.length > 2 ? Float.parseFloat(args[2]) : 4f;
+
+        System.out.println("objects: " + count + ", frames: " + frames + ", speed: " + speed);
+
+        //warm up both paths before measuring
+        for(int i = 0; i < 3; i++){
+            run(count, frames / 3 + 1, speed, false);
+            run(count, frames / 3 + 1, speed, true);
+        }
+
+        long rebuild = run(count, frames, speed, false);
+        long incremental = run(count, frames, speed, true);
+
+        System.out.printf("rebuild:     %.3f ms/frame%n", rebuild / 1000000f / frames);
+        System.out.printf("incremental: %.3f ms/frame%n", incremental / 1000000f / frames);
+    }
+
+    /** Returns the time spent updating the tree, in nanoseconds. Moving the objects is not timed. */
+    static long run(int count, int frames, float speed, boolean incremental){
+        Random random = new Random(0);
+        Mover[] movers = new Mover[count];
+        for(int i = 0; i < count; i++){
+            movers[i] = new Mover(random.nextFloat() * (size - hitbox), random.nextFloat() * (size - hitbox), random.nextFloat() * 360f);
+        }
+
+        QuadTree<Mover> tree = new QuadTree<>(5, new Rectangle(0, 0, size, size));
+        tree.setTracking(incremental);
+        for(Mover mover : movers){
+            tree.insert(mover);
+        }
+
+        long total = 0;
+        for(int f = 0; f < frames; f++){
+            for(Mover mover : movers){
+                mover.move(speed);
+            }
+
+            long start = System.nanoTime();
+            if(incremental){
+                for(Mover mover : movers){
+                    tree.update(mover);
+                }
+            }else{
+                tree.clear();
+                for(Mover mover : movers){
+                    tree.insert(mover);
+                }
+            }
+            total += System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    static class Mover implements QuadTree.QuadTreeObject{
+        float x, y, dx, dy;
+
+        Mover(float x, float y, float angle){
+            this.x = x;
+            this.y = y;
+            this.dx = (float) Math.cos(Math.toRadians(angle));
+            this.dy = (float) Math.sin(Math.toRadians(angle));
+        }
+
+        void move(float speed){
+            x += dx * speed;
+            y += dy * speed;
+            if(x < 0 || x > size - hitbox) dx = -dx;
+            if(y < 0 || y > size - hitbox) dy = -dy;
+            x = Math.max(0, Math.min(x, size - hitbox));
+            y = Math.max(0, Math.min(y, size - hitbox));
+        }
+
+        @Override
+        public void getHitbox(Rectangle out){
+            out.set(x, y, hitbox, hitbox);
+        }
+    }
+}
@@ -4,24 +4,92 @@ import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import ucore.function.Consumer;
 import ucore.function.Event;
+import ucore.util.MpscQueue;
 
+/**
+ * Dispatches events to listeners registered by event class.
+ * Each event class gets a dense ID when it is first registered; firing by ID is a plain array lookup.
+ * Firing by event object goes through a small cache of listener lists indexed by the identity hash of the class,
+ * so the class is only looked up in a map the first time it is fired, or when another class has taken its cache slot.
+ * Events can also be posted from any thread and delivered later on the main thread with {@link #drain()}.
+ */
 public class Events{
-    private static ObjectMap<Class<? extends Event>, Array<Consumer<? extends Event>>> events = new ObjectMap<>();
+    private static final int cacheMask = 63;
 
-    public static <T extends Event> void on(Class<T> type, Consumer<T> listener){
-        if(events.get(type) == null)
-            events.put(type, new Array<>());
+    private static final ObjectMap<Class<? extends Event>, Listeners> types = new ObjectMap<>();
+    private static final Array<Listeners> listeners = new Array<>();
+    private static final Listeners[] cache = new Listeners[cacheMask + 1];
+    private static final MpscQueue<Event> queue = new MpscQueue<>();
+
+    /** Returns the ID of an event class, assigning a new one if it has none yet. */
+    public static int register(Class<? extends Event> type){
+        return listeners(type).id;
+    }
+
+    private static synchronized Listeners listeners(Class<? extends Event> type){
+        Listeners list = types.get(type);
+        if(list == null){
+            list = new Listeners(type, listeners.size);
+            types.put(type, list);
+            listeners.add(list);
+        }
+        return list;
+    }
 
-        events.get(type).add(listener);
+    public static <T extends Event> void on(Class<T> type, Consumer<T> listener){
+        listeners(type).consumers.add(listener);
     }
 
     public static <T extends Event> void fire(T type){
-        if(events.get(type.getClass()) == null)
-            return;
+        Class<? extends Event> c = type.getClass();
+        int slot = c.hashCode() & cacheMask;
+        Listeners list = cache[slot];
+
+        if(list == null || list.type != c){
+            synchronized(Events.class){
+                list = types.get(c);
+            }
+            if(list == null) return;
+            cache[slot] = list;
+        }
+
+        list.fire(type);
+    }
+
+    /** Fires an event using the ID returned by {@link #register(Class)}, skipping the class lookup. */
+    public static <T extends Event> void fire(int id, T type){
+        listeners.get(id).fire(type);
+    }
+
+    /** Queues an event for delivery on the next {@link #drain()}. Safe to call from any thread. */
+    public static void post(Event event){
+        queue.offer(event);
+    }
 
-        for(Consumer<? extends Event> event : events.get(type.getClass())){
-            ((Consumer<T>)event).accept(type);
+    /** Fires all queued events in the order they were posted. Must be called from the main thread, e.g. once per update. */
+    public static void drain(){
+        Event event;
+        while((event = queue.poll()) != null){
+            fire(event);
         }
     }
 
+    /** Listeners of one event class. */
+    private static class Listeners{
+        final Class<? extends Event> type;
+        final int id;
+        final Array<Consumer<? extends Event>> consumers = new Array<>();
+
+        Listeners(Class<? extends Event> type, int id){
+            this.type = type;
+            this.id = id;
+        }
+
+        @SuppressWarnings("unchecked")
+        <T extends Event> void fire(T event){
+            for(int i = 0; i < consumers.size; i++){
+                ((Consumer<T>) consumers.get(i)).accept(event);
+            }
+        }
+    }
 }
@@ -0,0 +1,61 @@
+package ucore.core;
+
+/**
+ * Accumulates frame time and converts it into a whole number of fixed-length logic ticks.
+ * The time left over after the last tick is exposed as an interpolation alpha for rendering.
+ */
+public class FixedTimestep{
+    private final float step;
+    private int maxTicks = 5;
+    private float accumulator;
+    private float alpha;
+
+    /** @param ticksPerSecond Amount of logic ticks per second of real time. */
+    public FixedTimestep(float ticksPerSecond){
+        this.step = 1f / ticksPerSecond;
+    }
+
+    /**
+     * Sets the maximum amount of ticks run in one frame. When a frame takes longer than that, the remaining time is dropped,
+     * so that slow frames slow down the simulation instead of causing even more work.
+     */
+    public void setMaxTicks(int maxTicks){
+        this.maxTicks = maxTicks;
+    }
+
+    /** Adds the elapsed frame time, in seconds, and returns the amount of ticks that should be run. */
+    public int advance(float seconds){
+        accumulator += seconds;
+
+        int ticks = (int) (accumulator / step);
+        if(ticks > maxTicks){
+            ticks = maxTicks;
+            accumulator = 0f;
+        }else{
+            accumulator -= ticks * step;
+        }
+
+        alpha = Math.min(accumulator / step, 1f);
+        return ticks;
+    }
+
+    /** Returns how far rendering is between the last two ticks, from 0 to 1. */
+    public float alpha(){
+        return alpha;
+    }
+
+    /** Returns the length of a tick in seconds. */
+    public float step(){
+        return step;
+    }
+
+    /** Returns the length of a tick in the units of {@link Timers#delta()}, where 1 is a 60th of a second. */
+    public float delta(){
+        return step * 60f;
+    }
+
+    public void reset(){
+        accumulator = 0f;
+        alpha = 0f;
+    }
+}
@@ -8,15 +8,42 @@ import ucore.util.Pooling;
 
 public class Timers{
     private static double time;
-    private static DelayedRemovalArray<DelayRun> runs = new DelayedRemovalArray<>();
+    /** Pending runs, as a binary min-heap ordered by their time. */
+    private static DelayRun[] runs = new DelayRun[16];
+    private static int runSize;
+    private static IntMap<DelayRun> runIDs = new IntMap<>();
+    private static int lastRunID;
     private static LongArray marks = new LongArray();
     private static DeltaProvider deltaimpl = () -> Math.min(Gdx.graphics.getDeltaTime() * 60f, 3f);
+    private static float tickDelta;
 
-    public static synchronized void run(float delay, Runnable r){
+    /** Runs something after a delay, in ticks. Returns a handle that can be passed to {@link #cancel(int)}. */
+    public static synchronized int run(float delay, Runnable r){
         DelayRun run = Pooling.obtain(DelayRun.class, DelayRun::new);
         run.finish = r;
-        run.delay = delay;
-        runs.add(run);
+        run.time = time + delay;
+        run.id = ++lastRunID == 0 ? ++lastRunID : lastRunID;
+        runIDs.put(run.id, run);
+
+        if(runSize == runs.length){
+            DelayRun[] newRuns = new DelayRun[runSize * 2];
+            System.arraycopy(runs, 0, newRuns, 0, runSize);
+            runs = newRuns;
+        }
+        runs[runSize] = run;
+        run.index = runSize;
+        siftUp(runSize++);
+        return run.id;
+    }
+
+    /** Cancels a delayed run. Returns false if it has already finished or was cancelled. */
+    public static synchronized boolean cancel(int handle){
+        DelayRun run = runIDs.remove(handle);
+        if(run == null) return false;
+
+        removeRun(run.index);
+        Pooling.free(run);
+        return true;
     }
 
     public static synchronized void runTask(float delay, Runnable r){
@@ -32,7 +59,12 @@ public class Timers{
         return (float)time;
     }
 
-    public static void resetTime(float time){
+    public static synchronized void resetTime(float time){
+        //pending runs keep their remaining delay
+        double shift = time - Timers.time;
+        for(int i = 0; i < runSize; i++){
+            runs[i].time += shift;
+        }
         Timers.time = time;
     }
 
@@ -55,31 +87,76 @@ public class Timers{
 
         time += delta;
 
-        runs.begin();
+        //only touch runs that are due; runs scheduled by a finishing run are handled in the same update if due
+        while(runSize > 0 && runs[0].time <= time){
+            DelayRun run = runs[0];
+            removeRun(0);
+            runIDs.remove(run.id);
 
-        for(DelayRun run : runs){
-            run.delay -= delta;
-
-            if(run.run != null)
-                run.run.run();
+            Runnable finish = run.finish;
+            Pooling.free(run);
+            if(finish != null)
+                finish.run();
+        }
+    }
 
-            if(run.delay <= 0){
-                if(run.finish != null)
-                    run.finish.run();
-                runs.removeValue(run, true);
-                Pooling.free(run);
-            }
+    public static synchronized void clear(){
+        for(int i = 0; i < runSize; i++){
+            Pooling.free(runs[i]);
+            runs[i] = null;
         }
+        runSize = 0;
+        runIDs.clear();
+    }
+
+    private static void removeRun(int index){
+        DelayRun last = runs[--runSize];
+        runs[runSize] = null;
+        if(index == runSize) return;
 
-        runs.end();
+        runs[index] = last;
+        last.index = index;
+        siftDown(index);
+        siftUp(last.index);
     }
 
-    public static synchronized void clear(){
-        runs.clear();
+    private static void siftUp(int index){
+        DelayRun run = runs[index];
+        while(index > 0){
+            int parent = (index - 1) >>> 1;
+            DelayRun p = runs[parent];
+            if(p.time <= run.time) break;
+            runs[index] = p;
+            p.index = index;
+            index = parent;
+        }
+        runs[index] = run;
+        run.index = index;
+    }
+
+    private static void siftDown(int index){
+        DelayRun run = runs[index];
+        int half = runSize >>> 1;
+        while(index < half){
+            int child = 2 * index + 1;
+            int right = child + 1;
+            if(right < runSize && runs[right].time < runs[child].time) child = right;
+            if(run.time <= runs[child].time) break;
+            runs[index] = runs[child];
+            runs[index].index = index;
+            index = child;
+        }
+        runs[index] = run;
+        run.index = index;
     }
 
     public static float delta(){
-        return deltaimpl.get();
+        return tickDelta > 0 ? tickDelta : deltaimpl.get();
+    }
+
+    /** Overrides the delta with a fixed value while logic ticks are running. Use 0 to return to the delta provider. */
+    public static void setTickDelta(float delta){
+        tickDelta = delta;
     }
 
     public static void setDeltaProvider(DeltaProvider impl){
@@ -87,7 +164,7 @@ public class Timers{
     }
 
     static void dispose(){
-        runs.clear();
+        clear();
     }
 
     public interface DeltaProvider{
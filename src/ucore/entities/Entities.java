@@ -1,14 +1,24 @@
 package ucore.entities;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntMap;
+import ucore.entities.trait.ConcurrentTrait;
 import ucore.entities.trait.Entity;
 import ucore.util.ThreadArray;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Entities{
     public static final int maxLeafObjects = 5;
     private static final EntityGroup<Entity> defaultGroup;
     private static final ThreadArray<EntityGroup<?>> groupArray = new ThreadArray<>();
     private static final IntMap<EntityGroup<?>> groups = new IntMap<>();
+    /** Minimum amount of entities updated by one parallel task. */
+    private static final int parallelChunkSize = 256;
+    private static ForkJoinPool pool;
+    /** Set on threads that are running an update task, so that their adds and removals are buffered. */
+    private static final ThreadLocal<Boolean> buffering = new ThreadLocal<>();
 
     static{
         defaultGroup = addGroup(Entity.class);
@@ -59,8 +69,109 @@ public class Entities{
             EntityQuery.collisions().updatePhysics(group);
         }
 
-        for(Entity e : group.all()){
-            e.update();
+        if(pool != null && group.size() >= parallelChunkSize * 2){
+            runParallel(new UpdateTask(group.all(), 0, group.size()));
+            updateSerial(group);
+        }else{
+            for(Entity e : group.all()){
+                e.update();
+            }
+        }
+    }
+
+    /**Updates several independent groups at once. {@link ConcurrentTrait} entities of all groups are updated concurrently
+     * on the parallel pool, then the remaining entities are updated serially. Falls back to serial updates if no pool is set.*/
+    public static void update(EntityGroup<?>... groups){
+        if(pool == null){
+            for(EntityGroup<?> group : groups){
+                update(group);
+            }
+            return;
+        }
+
+        for(EntityGroup<?> group : groups){
+            group.updateEvents();
+
+            if(group.useTree()){
+                EntityQuery.collisions().updatePhysics(group);
+            }
+        }
+
+        UpdateTask[] tasks = new UpdateTask[groups.length];
+        for(int i = 0; i < groups.length; i++){
+            tasks[i] = new UpdateTask(groups[i].all(), 0, groups[i].size());
+        }
+        runParallel(new RecursiveAction(){
+            @Override
+            protected void compute(){
+                invokeAll(tasks);
+            }
+        });
+
+        for(EntityGroup<?> group : groups){
+            updateSerial(group);
+        }
+    }
+
+    /**Sets the pool used to update {@link ConcurrentTrait} entities in parallel, or null to update everything serially.*/
+    public static void setParallel(ForkJoinPool pool){
+        Entities.pool = pool;
+    }
+
+    /**Returns whether the calling thread is updating entities in parallel. Adds and removals are buffered while this is true.*/
+    public static boolean isBuffering(){
+        return buffering.get() == Boolean.TRUE;
+    }
+
+    private static void runParallel(RecursiveAction task){
+        try{
+            pool.invoke(task);
+        }finally{
+            for(EntityGroup<?> group : groupArray){
+                group.mergeBuffered();
+            }
+        }
+    }
+
+    private static void updateSerial(EntityGroup<?> group){
+        Array<? extends Entity> all = group.all();
+        for(int i = 0; i < all.size; i++){
+            Entity e = all.get(i);
+            if(!(e instanceof ConcurrentTrait)){
+                e.update();
+            }
+        }
+    }
+
+    private static class UpdateTask extends RecursiveAction{
+        final Array<? extends Entity> entities;
+        final int start, end;
+
+        UpdateTask(Array<? extends Entity> entities, int start, int end){
+            this.entities = entities;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute(){
+            if(end - start > parallelChunkSize * 2){
+                int mid = (start + end) >>> 1;
+                invokeAll(new UpdateTask(entities, start, mid), new UpdateTask(entities, mid, end));
+                return;
+            }
+
+            buffering.set(Boolean.TRUE);
+            try{
+                for(int i = start; i < end; i++){
+                    Entity e = entities.get(i);
+                    if(e instanceof ConcurrentTrait){
+                        e.update();
+                    }
+                }
+            }finally{
+                buffering.remove();
+            }
         }
     }
 }
@@ -4,13 +4,16 @@ import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.IntSet;
+import com.badlogic.gdx.utils.LongMap;
 import ucore.entities.trait.Entity;
 import ucore.entities.trait.SolidTrait;
 import ucore.function.TileCollider;
 import ucore.function.TileHitboxProvider;
 import ucore.util.Mathf;
 import ucore.util.Physics;
-import ucore.util.QuadTree;
+import ucore.util.SpatialIndex;
+
+import java.util.concurrent.ForkJoinPool;
 
 public class EntityCollisions{
     //range for tile collision scanning
@@ -27,15 +30,124 @@ public class EntityCollisions{
     private Vector2 l1 = new Vector2();
     private Rectangle r1 = new Rectangle();
     private Rectangle r2 = new Rectangle();
+    private TileCache cache;
 
     //entity collisions
     private IntSet collided = new IntSet();
     private Array<SolidTrait> arrOut = new Array<>();
+    private boolean incremental;
+    private boolean swept;
+    private ParallelCollisions parallel;
+    private boolean sweepPrune;
+    private LongMap<SweepAndPrune> sweeps = new LongMap<>();
+
+    /**
+     * Sets whether group trees are updated incrementally. When enabled, entities that stay within their quadtree node
+     * or grid cell are left alone and only movers are relocated, instead of rebuilding the whole tree every update.
+     */
+    public void setIncremental(boolean incremental){
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental(){
+        return incremental;
+    }
+
+    /**
+     * Runs the pair search of {@link #collideGroups(EntityGroup, EntityGroup)} on the specified pool, or serially if it is null.
+     * Collision pairs are gathered by workers and dispatched on the calling thread in the same order as the serial search.
+     * All pairs are found before any is dispatched, so a {@link SolidTrait#collision(SolidTrait, float, float)} that removes
+     * or deactivates an entity does not stop its later pairs in the same call, unlike the serial search.
+     * Entity hitbox, position and {@link SolidTrait#collides(SolidTrait)} methods must then be safe to call from other threads.
+     */
+    public void setParallel(ForkJoinPool pool){
+        parallel = pool == null ? null : new ParallelCollisions(pool);
+    }
+
+    public boolean isParallel(){
+        return parallel != null;
+    }
+
+    /**
+     * Sets whether {@link #collideGroups(EntityGroup, EntityGroup)} uses a sweep-and-prune pass over the swept hitboxes
+     * of both groups instead of one tree query per entity. The sorted order is kept per pair of groups and reused across updates,
+     * so this works best when the same groups are collided every update. Takes precedence over parallel collisions.
+     */
+    public void setSweepPrune(boolean sweepPrune){
+        this.sweepPrune = sweepPrune;
+        if(!sweepPrune) sweeps.clear();
+    }
+
+    public boolean isSweepPrune(){
+        return sweepPrune;
+    }
+
+    /**
+     * Sets whether tile collisions sweep the hitbox along each axis in one pass, instead of moving it in 1-unit steps.
+     * The cost of a swept move scales with the amount of tiles crossed, not the distance travelled, which suits fast entities.
+     * Entities that already overlap a tile are not pushed out of it in this mode.
+     */
+    public void setSwept(boolean swept){
+        this.swept = swept;
+    }
+
+    public boolean isSwept(){
+        return swept;
+    }
 
     public void setCollider(float tilesize, TileCollider collider, TileHitboxProvider hitbox){
         this.tilesize = tilesize;
         this.collider = collider;
         this.hitboxProvider = hitbox;
+        this.cache = null;
+    }
+
+    /**
+     * Caches solidity and hitboxes of tiles within the specified bounds, so that tile collisions read packed bits
+     * instead of calling the collider for every tile. Must be called after {@link #setCollider(float, TileCollider, TileHitboxProvider)}.
+     * Changed tiles must then be reported with {@link #invalidateTiles(int, int, int, int)}.
+     */
+    public void setTileCache(int width, int height){
+        if(collider == null)
+            throw new IllegalArgumentException("No tile collider specified! Call setCollider() first.");
+
+        cache = new TileCache(tilesize, collider, hitboxProvider, width, height);
+    }
+
+    /**Returns the tile cache, or null if it is not enabled.*/
+    public TileCache tileCache(){
+        return cache;
+    }
+
+    /**Marks a region of tiles as changed. Does nothing if the tile cache is not enabled.*/
+    public void invalidateTiles(int x, int y, int width, int height){
+        if(cache != null) cache.invalidate(x, y, width, height);
+    }
+
+    private boolean solid(int x, int y){
+        return cache == null ? collider.solid(x, y) : cache.solid(x, y);
+    }
+
+    private void tileHitbox(int x, int y, Rectangle out){
+        if(cache == null){
+            hitboxProvider.getHitbox(x, y, out);
+        }else{
+            cache.getHitbox(x, y, out);
+        }
+    }
+
+    /**Returns a mask of the rows around a tile that may contain solid tiles, with bit 0 being the lowest row.
+     * Without a cache, all rows are assumed to.*/
+    private int solidRows(int tilex, int tiley, int range){
+        if(cache == null) return -1;
+
+        int rows = 0;
+        for(int dy = -range; dy <= range; dy++){
+            if(cache.anySolid(tiley + dy, tilex - range, tilex + range)){
+                rows |= 1 << (dy + range);
+            }
+        }
+        return rows;
     }
 
     public void setCollider(float tilesize, TileCollider collider){
@@ -43,6 +155,10 @@ public class EntityCollisions{
     }
 
     public void move(SolidTrait entity, float deltax, float deltay){
+        if(swept){
+            moveSwept(entity, deltax, deltay);
+            return;
+        }
 
         boolean movedx = false;
 
@@ -82,13 +198,16 @@ public class EntityCollisions{
         rect.y += deltay;
 
         int tilex = Mathf.scl2(rect.x + rect.width / 2, tilesize), tiley = Mathf.scl2(rect.y + rect.height / 2, tilesize);
+        if(cache != null) cache.update();
+
+        int rows = solidRows(tilex, tiley, r);
 
         for(int dx = -r; dx <= r; dx++){
             for(int dy = -r; dy <= r; dy++){
                 int wx = dx + tilex, wy = dy + tiley;
-                if(collider.solid(wx, wy)){
+                if((rows & (1 << (dy + r))) != 0 && solid(wx, wy)){
 
-                    hitboxProvider.getHitbox(wx, wy, tmp);
+                    tileHitbox(wx, wy, tmp);
 
                     if(tmp.overlaps(rect)){
                         Vector2 v = Physics.overlap(rect, tmp, x);
@@ -103,6 +222,75 @@ public class EntityCollisions{
         entity.setY(entity.getY() + rect.y - r2.y);
     }
 
+    /**
+     * Moves an entity along the X axis, then the Y axis, stopping at the first solid tile on each axis.
+     * Tile hitboxes may reach up to one tile past their own tile.
+     */
+    public void moveSwept(SolidTrait entity, float deltax, float deltay){
+        if(collider == null)
+            throw new IllegalArgumentException("No tile collider specified! Call setCollider() first.");
+
+        Rectangle rect = r1;
+        entity.getHitboxTile(rect);
+        entity.getHitboxTile(r2);
+        if(cache != null) cache.update();
+
+        if(deltax != 0){
+            rect.x += sweep(rect, deltax, true);
+        }
+
+        if(deltay != 0){
+            rect.y += sweep(rect, deltay, false);
+        }
+
+        entity.setX(entity.getX() + rect.x - r2.x);
+        entity.setY(entity.getY() + rect.y - r2.y);
+    }
+
+    /**
+     * Walks the lines of tiles crossed by the leading edge of a rectangle and returns how far it can move along one axis.
+     * Lines are widened by one tile on every side, for hitboxes that reach past their tile.
+     */
+    private float sweep(Rectangle rect, float delta, boolean x){
+        int step = delta > 0 ? 1 : -1;
+        float lead = x ? (step > 0 ? rect.x + rect.width : rect.x) : (step > 0 ? rect.y + rect.height : rect.y);
+        float min = x ? rect.y : rect.x, max = x ? rect.y + rect.height : rect.x + rect.width;
+        //edges left a rounding error past a face by a previous move are still blocked by it, and do not snag on its sides
+        float epsilon = tilesize * 0.001f;
+
+        int from = Mathf.scl2(lead, tilesize) - step, to = Mathf.scl2(lead + delta, tilesize) + step;
+        int lo = Mathf.scl2(min, tilesize) - 1, hi = Mathf.scl2(max, tilesize) + 1;
+
+        for(int i = from; i != to + step; i += step){
+            //tiles are centered, so this line starts half a tile back, and hitboxes may reach a tile further; stop once it is out of reach
+            float near = (i - step * 1.5f) * tilesize;
+            if((near - lead) * step > delta * step) break;
+
+            for(int j = lo; j <= hi; j++){
+                int wx = x ? i : j, wy = x ? j : i;
+                if(!solid(wx, wy)) continue;
+
+                tileHitbox(wx, wy, tmp);
+                float tmin = x ? tmp.y : tmp.x, tmax = x ? tmp.y + tmp.height : tmp.x + tmp.width;
+                if(tmax <= min + epsilon || tmin >= max - epsilon) continue;
+
+                float face = x ? (step > 0 ? tmp.x : tmp.x + tmp.width) : (step > 0 ? tmp.y : tmp.y + tmp.height);
+                float allowed = face - lead;
+
+                //ignore tiles that are already overlapped, unless only by a rounding error
+                if(allowed * step < 0 && allowed * step > -epsilon){
+                    allowed = 0f;
+                }
+
+                if(allowed * step >= 0 && allowed * step < delta * step){
+                    delta = allowed;
+                }
+            }
+        }
+
+        return delta;
+    }
+
     public boolean overlapsTile(Rectangle rect){
         if(collider == null)
             throw new IllegalArgumentException("No tile collider specified! Call setCollider() first.");
@@ -113,12 +301,15 @@ public class EntityCollisions{
         //assumes tiles are centered
         int tilex = Mathf.scl2(vector.x, tilesize);
         int tiley = Mathf.scl2(vector.y, tilesize);
+        if(cache != null) cache.update();
+
+        int rows = solidRows(tilex, tiley, r);
 
         for(int dx = -r; dx <= r; dx++){
             for(int dy = -r; dy <= r; dy++){
                 int wx = dx + tilex, wy = dy + tiley;
-                if(collider.solid(wx, wy)){
-                    hitboxProvider.getHitbox(wx, wy, r2);
+                if((rows & (1 << (dy + r))) != 0 && solid(wx, wy)){
+                    tileHitbox(wx, wy, r2);
 
                     if(r2.overlaps(rect)){
                         return true;
@@ -132,14 +323,22 @@ public class EntityCollisions{
     public <T extends Entity> void updatePhysics(EntityGroup<T> group){
         collided.clear();
 
-        QuadTree tree = group.tree();
-        tree.clear();
+        SpatialIndex<T> tree = group.tree();
+        tree.setTracking(incremental);
 
-        for(Entity entity : group.all()){
+        if(!incremental){
+            tree.clear();
+        }
+
+        for(T entity : group.all()){
             if(entity instanceof SolidTrait){
                 SolidTrait s = (SolidTrait) entity;
                 s.lastPosition().set(s.getX(), s.getY());
-                tree.insert(s);
+                if(incremental){
+                    tree.update(entity);
+                }else{
+                    tree.insert(entity);
+                }
             }
         }
     }
@@ -149,8 +348,17 @@ public class EntityCollisions{
         SolidTrait a = (SolidTrait) entity;
         SolidTrait b = (SolidTrait) other;
 
-        a.getHitbox(this.r1);
-        b.getHitbox(this.r2);
+        if(checkCollide(a, b, r1, r2, l1)){
+            a.collision(b, l1.x, l1.y);
+            b.collision(a, l1.x, l1.y);
+        }
+    }
+
+    /**Returns whether two solids collided during the last update, storing the contact point in out.
+     * The rectangles are used as scratch space. Does not modify either entity.*/
+    static boolean checkCollide(SolidTrait a, SolidTrait b, Rectangle r1, Rectangle r2, Vector2 out){
+        a.getHitbox(r1);
+        b.getHitbox(r2);
 
         r1.x += (a.lastPosition().x - a.getX());
         r1.y += (a.lastPosition().y - a.getY());
@@ -163,17 +371,14 @@ public class EntityCollisions{
         float vby = b.getY() - b.lastPosition().y;
 
         if(a != b && a.collides(b) && b.collides(a)){
-            l1.set(a.getX(), a.getY());
-            boolean collide = r1.overlaps(r2) || collide(r1.x, r1.y, r1.width, r1.height, vax, vay,
-            r2.x, r2.y, r2.width, r2.height, vbx, vby, l1);
-            if(collide){
-                a.collision(b, l1.x, l1.y);
-                b.collision(a, l1.x, l1.y);
-            }
+            out.set(a.getX(), a.getY());
+            return r1.overlaps(r2) || collide(r1.x, r1.y, r1.width, r1.height, vax, vay,
+            r2.x, r2.y, r2.width, r2.height, vbx, vby, out);
         }
+        return false;
     }
 
-    private boolean collide(float x1, float y1, float w1, float h1, float vx1, float vy1,
+    private static boolean collide(float x1, float y1, float w1, float h1, float vx1, float vy1,
                             float x2, float y2, float w2, float h2, float vx2, float vy2, Vector2 out){
         float px = vx1, py = vy1;
 
@@ -224,7 +429,24 @@ public class EntityCollisions{
     }
 
     public void collideGroups(EntityGroup<?> groupa, EntityGroup<?> groupb){
+        if(sweepPrune){
+            long key = (((long) groupa.getID()) << 32) | (groupb.getID() & 0xffffffffL);
+            SweepAndPrune sweep = sweeps.get(key);
+            if(sweep == null){
+                sweeps.put(key, sweep = new SweepAndPrune());
+            }
+            sweep.collideGroups(groupa, groupb);
+            return;
+        }
+
+        if(parallel != null && groupa.size() >= ParallelCollisions.minParallelSize){
+            parallel.collideGroups(groupa, groupb);
+            return;
+        }
+
         collided.clear();
+        //IDs are only unique within a group, so pairs are only skipped by ID when a group collides with itself
+        boolean same = groupa == groupb;
 
         for(Entity entity : groupa.all()){
             if(!(entity instanceof SolidTrait) || collided.contains(entity.getID()))
@@ -240,11 +462,11 @@ public class EntityCollisions{
             r2.merge(r1);
 
             arrOut.clear();
-            groupb.tree().getIntersect(arrOut, r2);
+            groupb.solidTree().getIntersect(arrOut, r2);
 
             for(SolidTrait sc : arrOut){
                 sc.getHitbox(r1);
-                if(r2.overlaps(r1) && !collided.contains(sc.getID())){
+                if(r2.overlaps(r1) && (!same || !collided.contains(sc.getID()))){
                     checkCollide(entity, sc);
                 }
             }
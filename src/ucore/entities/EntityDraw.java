@@ -4,6 +4,7 @@ import com.badlogic.gdx.graphics.OrthographicCamera;
 import com.badlogic.gdx.math.Rectangle;
 import ucore.core.Core;
 import ucore.entities.trait.DrawTrait;
+import ucore.entities.trait.SolidTrait;
 import ucore.function.Consumer;
 import ucore.function.Predicate;
 
@@ -11,11 +12,33 @@ public class EntityDraw{
     private static final Rectangle viewport = new Rectangle();
     private static final Rectangle rect = new Rectangle();
     private static boolean clip = true;
+    private static float alpha = 1f;
 
     public static void setClip(boolean clip){
         EntityDraw.clip = clip;
     }
 
+    /**Sets the interpolation alpha between the previous and the current logic tick. Set by fixed timestep loops.*/
+    public static void setAlpha(float alpha){
+        EntityDraw.alpha = alpha;
+    }
+
+    /**Returns the interpolation alpha between the previous and the current logic tick. Always 1 without a fixed timestep.*/
+    public static float alpha(){
+        return alpha;
+    }
+
+    /**Returns the X position to draw an entity at, interpolated between its last and current position.
+     * The last position is recorded by physics updates, so this requires a group with a tree.*/
+    public static float drawX(SolidTrait entity){
+        return entity.lastPosition().x + (entity.getX() - entity.lastPosition().x) * alpha;
+    }
+
+    /**Returns the Y position to draw an entity at, interpolated between its last and current position.*/
+    public static float drawY(SolidTrait entity){
+        return entity.lastPosition().y + (entity.getY() - entity.lastPosition().y) * alpha;
+    }
+
     public static void draw(){
         draw(Entities.defaultGroup());
     }
@@ -2,11 +2,17 @@ package ucore.entities;
 
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
-import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
 import ucore.entities.trait.Entity;
+import ucore.entities.trait.SolidTrait;
 import ucore.function.Consumer;
 import ucore.function.Predicate;
 import ucore.util.QuadTree;
+import ucore.util.SlotMap;
+import ucore.util.SpatialHash;
+import ucore.util.SpatialIndex;
 
 public class EntityGroup<T extends Entity>{
     private static int lastid;
@@ -16,8 +22,18 @@ public class EntityGroup<T extends Entity>{
     private final Array<T> entityArray = new Array<>(false, 16);
     private final Array<T> entitiesToRemove = new Array<>(false, 16);
     private final Array<T> entitiesToAdd = new Array<>(false, 16);
-    private IntMap<T> map;
-    private QuadTree<T> tree;
+    /** Index of every entity in entityArray, for swap-removal. */
+    private final ObjectIntMap<T> indices = new ObjectIntMap<>();
+    /** Index of every queued entity in entitiesToAdd, by ID. */
+    private final IntIntMap queued = new IntIntMap();
+    /** Adds and removals made during parallel updates, applied afterwards on the main thread in the order they were made. */
+    private final Array<T> buffered = new Array<>(16);
+    /** Whether each buffered entity was added rather than removed. */
+    private final BooleanArray bufferedAdds = new BooleanArray(16);
+    private SlotMap<T> map;
+    private boolean assignIDs;
+    private SpatialIndex<T> tree;
+    private float gridSize;
     private Consumer<T> removeListener;
     private Consumer<T> addListener;
 
@@ -39,8 +55,19 @@ public class EntityGroup<T extends Entity>{
         this.addListener = addListener;
     }
 
+    /**Enables lookup of entities by ID. Entities are given a new ID by this group whenever they are added. See {@link SlotMap}.*/
     public EntityGroup<T> enableMapping(){
-        map = new IntMap<>();
+        return enableMapping(true);
+    }
+
+    /**
+     * Enables lookup of entities by ID.
+     * @param assignIDs Whether entities are given a new ID by this group whenever they are added. If false, entities keep their ID,
+     * which must have been assigned by another mapped group, for example one on a server that sent the entity.
+     */
+    public EntityGroup<T> enableMapping(boolean assignIDs){
+        map = new SlotMap<>();
+        this.assignIDs = assignIDs;
         return this;
     }
 
@@ -61,7 +88,11 @@ public class EntityGroup<T extends Entity>{
         for(T e : entitiesToAdd){
             if(e == null)
                 continue;
-            entityArray.add(e);
+            //entities that were removed and re-added before this update are still present
+            if(!indices.containsKey(e)){
+                indices.put(e, entityArray.size);
+                entityArray.add(e);
+            }
             e.added();
 
             if(map != null){
@@ -70,12 +101,27 @@ public class EntityGroup<T extends Entity>{
         }
 
         entitiesToAdd.clear();
+        queued.clear();
 
         for(T e : entitiesToRemove){
-            entityArray.removeValue(e, true);
+            //re-added after removal was queued, so keep it
+            if(e.getGroup() == this)
+                continue;
+
+            int index = indices.remove(e, -1);
+            if(index != -1){
+                T last = entityArray.pop();
+                if(index < entityArray.size){
+                    entityArray.set(index, last);
+                    indices.put(last, index);
+                }
+            }
             if(map != null){
                 map.remove(e.getID());
             }
+            if(tree != null && tree.isTracking()){
+                tree.remove(e);
+            }
             e.removed();
         }
 
@@ -93,24 +139,48 @@ public class EntityGroup<T extends Entity>{
         if(t != null){ //remove if present in map already
             remove(t);
         }else{ //maybe it's being queued?
-            for(T check : entitiesToAdd){
-                if(check.getID() == id){ //if it is indeed queued, remove it
-                    entitiesToAdd.removeValue(check, true);
-                    if(removeListener != null){
-                        removeListener.accept(check);
-                    }
-                    break;
+            int index = queued.remove(id, -1);
+            if(index != -1){ //if it is indeed queued, remove it
+                T check = entitiesToAdd.removeIndex(index);
+                if(index < entitiesToAdd.size){
+                    queued.put(entitiesToAdd.get(index).getID(), index);
+                }
+                if(removeListener != null){
+                    removeListener.accept(check);
                 }
             }
         }
     }
 
-    public QuadTree tree(){
+    /**Makes this group use a uniform grid with the specified cell size instead of a quadtree.
+     * Grids are unbounded and work best for many evenly spread, similarly sized entities.*/
+    public EntityGroup<T> useGrid(float cellSize){
+        gridSize = cellSize;
+        return this;
+    }
+
+    public boolean gridEnabled(){
+        return gridSize > 0;
+    }
+
+    /**Returns the spatial index of this group: a quadtree, or a grid if {@link #useGrid(float)} was called.*/
+    public SpatialIndex<T> tree(){
         return tree;
     }
 
+    /**Returns the spatial index as an index of solids. Only {@link SolidTrait} entities are ever inserted into it.*/
+    @SuppressWarnings("unchecked")
+    SpatialIndex<SolidTrait> solidTree(){
+        return (SpatialIndex<SolidTrait>) (SpatialIndex<?>) tree;
+    }
+
+    /**Creates the spatial index of this group. Bounds are ignored for grid-based groups.*/
     public void setTree(float x, float y, float w, float h){
-        tree = new QuadTree<>(Entities.maxLeafObjects, new Rectangle(x, y, w, h));
+        if(gridEnabled()){
+            tree = new SpatialHash<>(gridSize);
+        }else{
+            tree = new QuadTree<>(Entities.maxLeafObjects, new Rectangle(x, y, w, h));
+        }
     }
 
     public boolean isEmpty(){
@@ -131,14 +201,25 @@ public class EntityGroup<T extends Entity>{
 
     public void add(T type){
         if(type == null) throw new RuntimeException("Cannot add a null entity!");
+        if(Entities.isBuffering()){
+            buffer(type, true);
+            return;
+        }
         if(type.getGroup() != null) return;
         type.setGroup(this);
-        entitiesToAdd.add(type);
 
         if(mappingEnabled()){
-            map.put(type.getID(), type);
+            //entities re-added before their removal was processed keep their ID
+            if(!assignIDs){
+                map.put(type.getID(), type);
+            }else if(map.get(type.getID()) != type){
+                type.resetID(map.add(type));
+            }
         }
 
+        queued.put(type.getID(), entitiesToAdd.size);
+        entitiesToAdd.add(type);
+
         if(addListener != null){
             addListener.accept(type);
         }
@@ -146,6 +227,10 @@ public class EntityGroup<T extends Entity>{
 
     public void remove(T type){
         if(type == null) throw new RuntimeException("Cannot remove a null entity!");
+        if(Entities.isBuffering()){
+            buffer(type, false);
+            return;
+        }
         type.setGroup(null);
         entitiesToRemove.add(type);
 
@@ -154,6 +239,26 @@ public class EntityGroup<T extends Entity>{
         }
     }
 
+    private void buffer(T type, boolean add){
+        synchronized(buffered){
+            buffered.add(type);
+            bufferedAdds.add(add);
+        }
+    }
+
+    /**Applies adds and removals that were buffered during a parallel update, in the order they were made.*/
+    void mergeBuffered(){
+        for(int i = 0; i < buffered.size; i++){
+            if(bufferedAdds.get(i)){
+                add(buffered.get(i));
+            }else{
+                remove(buffered.get(i));
+            }
+        }
+        buffered.clear();
+        bufferedAdds.clear();
+    }
+
     public void clear(){
         for(T entity : entityArray)
             entity.setGroup(null);
@@ -167,8 +272,12 @@ public class EntityGroup<T extends Entity>{
         entitiesToAdd.clear();
         entitiesToRemove.clear();
         entityArray.clear();
+        indices.clear();
+        queued.clear();
         if(map != null)
             map.clear();
+        if(tree != null)
+            tree.clear();
     }
 
     public T find(Predicate<T> pred){
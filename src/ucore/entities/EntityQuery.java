@@ -40,16 +40,16 @@ public class EntityQuery{
     public static void getNearby(EntityGroup<?> group, Rectangle rect, Consumer<SolidTrait> out){
 
         if(!group.useTree())
-            throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
-        group.tree().getIntersect(out, rect);
+            throw new RuntimeException("This group does not support spatial queries! Enable trees when creating it.");
+        group.solidTree().getIntersect(out, rect);
     }
 
     public static Array<SolidTrait> getNearby(EntityGroup<?> group, Rectangle rect){
 
         array.clear();
         if(!group.useTree())
-            throw new RuntimeException("This group does not support quadtrees! Enable quadtrees when creating it.");
-        group.tree().getIntersect(array, rect);
+            throw new RuntimeException("This group does not support spatial queries! Enable trees when creating it.");
+        group.solidTree().getIntersect(array, rect);
         return array;
     }
 
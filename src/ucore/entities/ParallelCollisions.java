@@ -0,0 +1,136 @@
+package ucore.entities;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import ucore.entities.trait.Entity;
+import ucore.entities.trait.SolidTrait;
+import ucore.util.SpatialIndex;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the pair search between two groups into chunks of the first group, which are processed on a fork-join pool.
+ * Each chunk has its own scratch buffers and collects its collision pairs, which are then dispatched serially in chunk order.
+ * Pairs are tested against the state before any dispatch, so a collision that changes what {@link SolidTrait#collides(SolidTrait)}
+ * returns, for example by removing an entity, only takes effect on the next call.
+ */
+class ParallelCollisions{
+    /** Groups smaller than this are always collided serially. */
+    static final int minParallelSize = 512;
+    private static final int minChunkSize = 128;
+
+    private final ForkJoinPool pool;
+    private final Array<Chunk> chunks = new Array<>();
+    /** Maps entity IDs to the index of their first occurrence in the first group. */
+    private final IntIntMap indices = new IntIntMap();
+
+    private Array<? extends Entity> entities;
+    private SpatialIndex<SolidTrait> index;
+    /** Whether a group is collided with itself. IDs are only unique within a group, so pairs are only skipped by ID then. */
+    private boolean same;
+
+    ParallelCollisions(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    void collideGroups(EntityGroup<?> groupa, EntityGroup<?> groupb){
+        entities = groupa.all();
+        index = groupb.solidTree();
+        same = groupa == groupb;
+
+        //an entity is skipped as a pair candidate if it was already processed earlier in the first group
+        indices.clear();
+        for(int i = 0; i < entities.size; i++){
+            int id = entities.get(i).getID();
+            if(!indices.containsKey(id)){
+                indices.put(id, i);
+            }
+        }
+
+        int chunkSize = Math.max(minChunkSize, entities.size / (pool.getParallelism() * 4) + 1);
+        int amount = (entities.size + chunkSize - 1) / chunkSize;
+
+        while(chunks.size < amount){
+            chunks.add(new Chunk());
+        }
+
+        for(int i = 0; i < amount; i++){
+            Chunk chunk = chunks.get(i);
+            chunk.reinitialize();
+            chunk.start = i * chunkSize;
+            chunk.end = Math.min(entities.size, chunk.start + chunkSize);
+            pool.execute(chunk);
+        }
+
+        for(int i = 0; i < amount; i++){
+            chunks.get(i).join();
+        }
+
+        for(int i = 0; i < amount; i++){
+            chunks.get(i).dispatch();
+        }
+
+        entities = null;
+        index = null;
+    }
+
+    private class Chunk extends RecursiveAction{
+        final Rectangle r1 = new Rectangle(), r2 = new Rectangle(), rect = new Rectangle();
+        final Vector2 l1 = new Vector2();
+        final Array<SolidTrait> arrOut = new Array<>();
+        final Array<SolidTrait> pairs = new Array<>();
+        final FloatArray points = new FloatArray();
+        int start, end;
+
+        @Override
+        protected void compute(){
+            pairs.clear();
+            points.clear();
+
+            for(int i = start; i < end; i++){
+                Entity entity = entities.get(i);
+                if(!(entity instanceof SolidTrait) || indices.get(entity.getID(), i) < i)
+                    continue;
+
+                SolidTrait solid = (SolidTrait) entity;
+
+                solid.getHitbox(r1);
+                r1.x += (solid.lastPosition().x - solid.getX());
+                r1.y += (solid.lastPosition().y - solid.getY());
+
+                solid.getHitbox(rect);
+                rect.merge(r1);
+
+                arrOut.clear();
+                index.getIntersect(arrOut, rect);
+
+                for(int j = 0; j < arrOut.size; j++){
+                    SolidTrait sc = arrOut.get(j);
+                    sc.getHitbox(r1);
+                    if(rect.overlaps(r1) && (!same || indices.get(sc.getID(), i) >= i)
+                    && EntityCollisions.checkCollide(solid, sc, r1, r2, l1)){
+                        pairs.add(solid);
+                        pairs.add(sc);
+                        points.add(l1.x);
+                        points.add(l1.y);
+                    }
+                }
+            }
+        }
+
+        void dispatch(){
+            for(int i = 0; i < pairs.size; i += 2){
+                SolidTrait a = pairs.get(i), b = pairs.get(i + 1);
+                float x = points.get(i), y = points.get(i + 1);
+                a.collision(b, x, y);
+                b.collision(a, x, y);
+            }
+            pairs.clear();
+            points.clear();
+        }
+    }
+}
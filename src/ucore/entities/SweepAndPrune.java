@@ -0,0 +1,146 @@
+package ucore.entities;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectSet;
+import ucore.entities.trait.Entity;
+import ucore.entities.trait.SolidTrait;
+
+/**
+ * Sort-based broadphase for colliding two groups.
+ * Swept hitboxes of both groups are kept sorted along the X axis; since entities move little between updates,
+ * the order of the last update is reused and restored with an insertion sort.
+ */
+class SweepAndPrune{
+    private static final byte sideA = 1, sideB = 2;
+
+    private final Rectangle r1 = new Rectangle(), r2 = new Rectangle();
+    private final Vector2 l1 = new Vector2();
+    private final ObjectSet<SolidTrait> present = new ObjectSet<>();
+
+    private SolidTrait[] items = new SolidTrait[16];
+    private float[] minx = new float[16], maxx = new float[16], miny = new float[16], maxy = new float[16];
+    private byte[] sides = new byte[16];
+    private int size;
+
+    void collideGroups(EntityGroup<?> groupa, EntityGroup<?> groupb){
+        //drop entities that left both groups, keeping the order of the rest
+        int kept = 0;
+        for(int i = 0; i < size; i++){
+            SolidTrait s = items[i];
+            EntityGroup<?> group = s.getGroup();
+            if(group == groupa || group == groupb){
+                items[kept++] = s;
+            }else{
+                present.remove(s);
+            }
+        }
+        for(int i = kept; i < size; i++){
+            items[i] = null;
+        }
+        size = kept;
+
+        addNew(groupa);
+        if(groupb != groupa) addNew(groupb);
+
+        for(int i = 0; i < size; i++){
+            SolidTrait s = items[i];
+            EntityGroup<?> group = s.getGroup();
+            sides[i] = (byte) ((group == groupa ? sideA : 0) | (group == groupb ? sideB : 0));
+
+            s.getHitbox(r1);
+            r1.x += (s.lastPosition().x - s.getX());
+            r1.y += (s.lastPosition().y - s.getY());
+            s.getHitbox(r2);
+            r2.merge(r1);
+
+            minx[i] = r2.x;
+            maxx[i] = r2.x + r2.width;
+            miny[i] = r2.y;
+            maxy[i] = r2.y + r2.height;
+        }
+
+        sort();
+
+        for(int i = 0; i < size; i++){
+            float right = maxx[i];
+            byte side = sides[i];
+
+            for(int j = i + 1; j < size && minx[j] <= right; j++){
+                if(miny[j] > maxy[i] || maxy[j] < miny[i]) continue;
+
+                //orient the pair so that the first entity belongs to the first group
+                SolidTrait a, b;
+                if((side & sideA) != 0 && (sides[j] & sideB) != 0){
+                    a = items[i];
+                    b = items[j];
+                }else if((side & sideB) != 0 && (sides[j] & sideA) != 0){
+                    a = items[j];
+                    b = items[i];
+                }else{
+                    continue;
+                }
+
+                if(EntityCollisions.checkCollide(a, b, r1, r2, l1)){
+                    a.collision(b, l1.x, l1.y);
+                    b.collision(a, l1.x, l1.y);
+                }
+            }
+        }
+    }
+
+    private void addNew(EntityGroup<?> group){
+        Array<? extends Entity> all = group.all();
+        for(int i = 0; i < all.size; i++){
+            Entity e = all.get(i);
+            if(!(e instanceof SolidTrait)) continue;
+            SolidTrait s = (SolidTrait) e;
+            if(present.add(s)){
+                if(size == items.length) resize(size * 2);
+                items[size++] = s;
+            }
+        }
+    }
+
+    /** Insertion sort by minimum X; near-linear when the order of the last update is mostly correct. */
+    private void sort(){
+        for(int i = 1; i < size; i++){
+            float key = minx[i];
+            if(minx[i - 1] <= key) continue;
+
+            SolidTrait item = items[i];
+            float kmaxx = maxx[i], kminy = miny[i], kmaxy = maxy[i];
+            byte kside = sides[i];
+
+            int j = i - 1;
+            while(j >= 0 && minx[j] > key){
+                items[j + 1] = items[j];
+                minx[j + 1] = minx[j];
+                maxx[j + 1] = maxx[j];
+                miny[j + 1] = miny[j];
+                maxy[j + 1] = maxy[j];
+                sides[j + 1] = sides[j];
+                j--;
+            }
+
+            items[j + 1] = item;
+            minx[j + 1] = key;
+            maxx[j + 1] = kmaxx;
+            miny[j + 1] = kminy;
+            maxy[j + 1] = kmaxy;
+            sides[j + 1] = kside;
+        }
+    }
+
+    private void resize(int capacity){
+        SolidTrait[] newItems = new SolidTrait[capacity];
+        System.arraycopy(items, 0, newItems, 0, size);
+        items = newItems;
+        minx = new float[capacity];
+        maxx = new float[capacity];
+        miny = new float[capacity];
+        maxy = new float[capacity];
+        sides = new byte[capacity];
+    }
+}
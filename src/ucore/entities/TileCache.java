@@ -0,0 +1,137 @@
+package ucore.entities;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.FloatArray;
+import ucore.function.TileCollider;
+import ucore.function.TileHitboxProvider;
+import ucore.util.GridBits;
+
+/**
+ * Caches tile solidity as packed bits and tile hitboxes as indices into a small table of shapes,
+ * so that collision checks do not go through the collider and hitbox provider interfaces.
+ * Tiles outside the cached area are delegated to them.
+ * <p>
+ * The cache must be told about changed tiles with {@link #invalidate(int, int, int, int)}; dirty regions are refreshed on the next {@link #update()}.
+ */
+public class TileCache{
+    /** Shape of a full tile centered on its position. */
+    private static final int shapeDefault = 0;
+    /** Shape that could not be stored in the table; the hitbox provider is used instead. */
+    private static final int shapeCustom = 255;
+
+    private final float tilesize;
+    private final TileCollider collider;
+    private final TileHitboxProvider provider;
+    private final GridBits solid;
+    private final byte[] shapes;
+    /** Offset x, offset y, width and height of each shape, relative to the tile position. Shape 0 is not stored. */
+    private final FloatArray shapeTable = new FloatArray();
+    private final Rectangle rect = new Rectangle();
+
+    private boolean dirty;
+    private int dirtyX1, dirtyY1, dirtyX2, dirtyY2;
+
+    public TileCache(float tilesize, TileCollider collider, TileHitboxProvider provider, int width, int height){
+        this.tilesize = tilesize;
+        this.collider = collider;
+        this.provider = provider;
+        this.solid = new GridBits(width, height);
+        this.shapes = new byte[width * height];
+        invalidate(0, 0, width, height);
+        update();
+    }
+
+    /** Marks a region of tiles as changed. */
+    public void invalidate(int x, int y, int width, int height){
+        int x2 = x + width - 1, y2 = y + height - 1;
+        if(!dirty){
+            dirtyX1 = x;
+            dirtyY1 = y;
+            dirtyX2 = x2;
+            dirtyY2 = y2;
+            dirty = true;
+        }else{
+            dirtyX1 = Math.min(dirtyX1, x);
+            dirtyY1 = Math.min(dirtyY1, y);
+            dirtyX2 = Math.max(dirtyX2, x2);
+            dirtyY2 = Math.max(dirtyY2, y2);
+        }
+    }
+
+    /** Marks a single tile as changed. */
+    public void invalidate(int x, int y){
+        invalidate(x, y, 1, 1);
+    }
+
+    /** Refreshes the invalidated region, if there is one. */
+    public void update(){
+        if(!dirty) return;
+        dirty = false;
+
+        int x1 = Math.max(dirtyX1, 0), y1 = Math.max(dirtyY1, 0);
+        int x2 = Math.min(dirtyX2, solid.width() - 1), y2 = Math.min(dirtyY2, solid.height() - 1);
+
+        for(int y = y1; y <= y2; y++){
+            for(int x = x1; x <= x2; x++){
+                boolean s = collider.solid(x, y);
+                solid.set(x, y, s);
+                shapes[x + y * solid.width()] = (byte) (s ? shapeOf(x, y) : shapeDefault);
+            }
+        }
+    }
+
+    private int shapeOf(int x, int y){
+        provider.getHitbox(x, y, rect);
+        float ox = rect.x - x * tilesize, oy = rect.y - y * tilesize;
+
+        if(rect.width == tilesize && rect.height == tilesize && ox == -tilesize / 2f && oy == -tilesize / 2f){
+            return shapeDefault;
+        }
+
+        float[] items = shapeTable.items;
+        for(int i = 0; i < shapeTable.size; i += 4){
+            if(items[i] == ox && items[i + 1] == oy && items[i + 2] == rect.width && items[i + 3] == rect.height){
+                return i / 4 + 1;
+            }
+        }
+
+        int index = shapeTable.size / 4 + 1;
+        if(index >= shapeCustom) return shapeCustom;
+        shapeTable.add(ox, oy, rect.width, rect.height);
+        return index;
+    }
+
+    public boolean solid(int x, int y){
+        if(!solid.inBounds(x, y)) return collider.solid(x, y);
+        return solid.get(x, y);
+    }
+
+    /** Returns whether any tile from x1 to x2 (inclusive) in a row is solid. */
+    public boolean anySolid(int y, int x1, int x2){
+        if(y < 0 || y >= solid.height() || x1 < 0 || x2 >= solid.width()){
+            for(int x = x1; x <= x2; x++){
+                if(solid(x, y)) return true;
+            }
+            return false;
+        }
+        return solid.any(y, x1, x2);
+    }
+
+    public void getHitbox(int x, int y, Rectangle out){
+        if(!solid.inBounds(x, y)){
+            provider.getHitbox(x, y, out);
+            return;
+        }
+
+        int shape = shapes[x + y * solid.width()] & 0xff;
+        if(shape == shapeDefault){
+            out.set(x * tilesize - tilesize / 2f, y * tilesize - tilesize / 2f, tilesize, tilesize);
+        }else if(shape == shapeCustom){
+            provider.getHitbox(x, y, out);
+        }else{
+            float[] items = shapeTable.items;
+            int i = (shape - 1) * 4;
+            out.set(x * tilesize + items[i], y * tilesize + items[i + 1], items[i + 2], items[i + 3]);
+        }
+    }
+}
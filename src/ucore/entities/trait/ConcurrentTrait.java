@@ -0,0 +1,9 @@
+package ucore.entities.trait;
+
+/**
+ * Marks an entity whose {@link #update()} may run on a worker thread, concurrently with other concurrent entities.
+ * Updates may only modify the entity itself. Adding and removing entities is allowed, as those calls are buffered until the update finishes;
+ * shared helpers such as {@link SolidTrait#move(float, float)} are not thread-safe and must not be used.
+ */
+public interface ConcurrentTrait extends Entity{
+}
@@ -0,0 +1,122 @@
+package ucore.fluid;
+
+import java.util.Arrays;
+
+/**
+ * A fluid provider backed by flat arrays, surrounded by a border of solid cells.
+ * {@link Fluidsim} reads these arrays directly instead of calling provider methods, and the border removes bounds checks on neighbours.
+ * Cells are stored column by column, in the order the simulation visits them; use {@link #index(int, int)} to find a cell.
+ * Cells outside the grid read as solid and empty, and writes to them are ignored.
+ */
+public class ArrayFluidProvider implements FluidProvider{
+    final int width, height;
+    /** Distance between the first cells of two neighbouring columns. */
+    final int stride;
+
+    final float[] liquid;
+    final float[] changes;
+    final boolean[] settled;
+    final int[] settlecount;
+    final boolean[] solid;
+
+    public ArrayFluidProvider(int width, int height){
+        this.width = width;
+        this.height = height;
+        this.stride = height + 2;
+
+        int size = (width + 2) * stride;
+        liquid = new float[size];
+        changes = new float[size];
+        settled = new boolean[size];
+        settlecount = new int[size];
+        solid = new boolean[size];
+
+        for(int x = -1; x <= width; x++){
+            solid[index(x, -1)] = true;
+            solid[index(x, height)] = true;
+        }
+
+        for(int y = 0; y < height; y++){
+            solid[index(-1, y)] = true;
+            solid[index(width, y)] = true;
+        }
+    }
+
+    /** Returns the array index of a cell. Valid for cells from -1 to the size of the grid, inclusive. */
+    public int index(int x, int y){
+        return (x + 1) * stride + y + 1;
+    }
+
+    private boolean inBounds(int x, int y){
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public void setSolid(int x, int y, boolean solid){
+        if(!inBounds(x, y)) return;
+        this.solid[index(x, y)] = solid;
+    }
+
+    @Override
+    public boolean isSolid(int x, int y){
+        return !inBounds(x, y) || solid[index(x, y)];
+    }
+
+    @Override
+    public boolean isSettled(int x, int y){
+        return inBounds(x, y) && settled[index(x, y)];
+    }
+
+    @Override
+    public void setSettled(int x, int y, boolean settle){
+        if(!inBounds(x, y)) return;
+        settled[index(x, y)] = settle;
+    }
+
+    @Override
+    public int getSettleCount(int x, int y){
+        return inBounds(x, y) ? settlecount[index(x, y)] : 0;
+    }
+
+    @Override
+    public void setSettleCount(int x, int y, int count){
+        if(!inBounds(x, y)) return;
+        settlecount[index(x, y)] = count;
+    }
+
+    @Override
+    public float getLiquid(int x, int y){
+        return inBounds(x, y) ? liquid[index(x, y)] : 0f;
+    }
+
+    @Override
+    public void setLiquid(int x, int y, float amount){
+        if(!inBounds(x, y)) return;
+        liquid[index(x, y)] = amount;
+    }
+
+    @Override
+    public void clearChanges(){
+        Arrays.fill(changes, 0);
+    }
+
+    @Override
+    public float getChanges(int x, int y){
+        return inBounds(x, y) ? changes[index(x, y)] : 0f;
+    }
+
+    @Override
+    public void setChanges(int x, int y, float amount){
+        if(!inBounds(x, y)) return;
+        changes[index(x, y)] = amount;
+    }
+
+    @Override
+    public int getWidth(){
+        return width;
+    }
+
+    @Override
+    public int getHeight(){
+        return height;
+    }
+}
@@ -1,8 +1,15 @@
 package ucore.fluid;
 
 import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.Array;
+import ucore.fluid.SparseFluidProvider.Chunk;
 import ucore.util.Mathf;
 
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 public class Fluidsim{
     public int iterations = 5;
 
@@ -18,10 +25,79 @@ public class Fluidsim{
 
     public FluidProvider provider;
 
+    /** Size of the chunks updated by one parallel task, if no active chunk size is set. */
+    private static final int parallelChunkSize = 32;
+
+    /** Size of active chunks, or 0 if every cell is updated. */
+    private int chunkSize;
+    /** Chunks that may contain unsettled liquid, column by column. Kept as booleans so that workers can wake chunks concurrently. */
+    private boolean[] active;
+    private int chunksX, chunksY;
+    private ForkJoinPool pool;
+
+    /** Chunks of a sparse provider, sorted column by column. */
+    private final Array<Chunk> sparseChunks = new Array<>();
+    private final Comparator<Chunk> chunkOrder = (a, b) -> a.x != b.x ? Integer.compare(a.x, b.x) : Integer.compare(a.y, b.y);
+
     public Fluidsim(FluidProvider provider){
         this.provider = provider;
     }
 
+    /**
+     * Makes the simulation only update chunks of the specified size that contain unsettled liquid,
+     * and chunks that liquid flows into. Cost then scales with the amount of moving liquid instead of the map area.
+     * Chunks are still updated in the same order as cells, so results are the same as updating every cell.
+     * <p>
+     * Changes made to the provider outside of the simulation must be reported with {@link #wake(int, int)},
+     * and this must be called again if the provider is replaced. Use a size of 0 to update every cell.
+     * Sparse providers only visit their allocated chunks, and ignore this.
+     */
+    public void setActiveChunks(int size){
+        chunkSize = size;
+
+        if(size > 0 && !(provider instanceof SparseFluidProvider)){
+            chunksX = (provider.getWidth() + size - 1) / size;
+            chunksY = (provider.getHeight() + size - 1) / size;
+            active = new boolean[chunksX * chunksY];
+            provider.clearChanges();
+            wakeAll();
+        }else{
+            active = null;
+        }
+    }
+
+    /** Returns the active chunk size, or 0 if every cell is updated. */
+    public int getActiveChunks(){
+        return chunkSize;
+    }
+
+    /** Marks the chunk of a cell as active. Call this after modifying liquid, solidity or settling of the cell. */
+    public void wake(int x, int y){
+        if(active != null && x >= 0 && y >= 0 && x < provider.getWidth() && y < provider.getHeight()){
+            active[x / chunkSize * chunksY + y / chunkSize] = true;
+        }
+    }
+
+    /** Marks every chunk as active. */
+    public void wakeAll(){
+        if(active != null) Arrays.fill(active, true);
+    }
+
+    /**
+     * Runs the simulation on the specified pool, or serially if it is null.
+     * The grid is split into chunks, the active chunks if they are enabled. Chunks are updated in four passes over a 2x2 checkerboard,
+     * so that no two chunks updated at once touch the same cell or its changes; each transfer of liquid is then applied to both cells.
+     * Cells within a chunk are updated in the usual order, but chunks are not, so results differ slightly from a serial update.
+     * The provider must allow concurrent access to different cells. Sparse providers are always updated serially.
+     */
+    public void setParallel(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    public boolean isParallel(){
+        return pool != null;
+    }
+
     public void simulate(){
         for(int i = 0; i < iterations; i++){
             runCycle();
@@ -47,10 +123,26 @@ public class Fluidsim{
         provider.setChanges(x, y, provider.getChanges(x, y) + amount);
         provider.setSettled(x, y, false);
         provider.setSettleCount(x, y, 0);
+        wake(x, y);
     }
 
     private void runCycle(){
-        float flow;
+        if(provider instanceof SparseFluidProvider){
+            runSparseCycle((SparseFluidProvider) provider);
+            return;
+        }
+
+        if(pool != null){
+            runParallelCycle();
+            return;
+        }
+
+        if(active != null){
+            runActiveCycle();
+            return;
+        }
+
+        ArrayFluidProvider flat = provider instanceof ArrayFluidProvider ? (ArrayFluidProvider) provider : null;
 
         // Reset the diffs array
         provider.clearChanges();
@@ -58,165 +150,530 @@ public class Fluidsim{
         // Main loop
         for(int x = 0; x < provider.getWidth(); x++){
             for(int y = 0; y < provider.getHeight(); y++){
+                if(flat != null){
+                    updateCell(flat, x, y);
+                }else{
+                    updateCell(x, y);
+                }
+            }
+        }
+
+        // Update Cell values
+        for(int x = 0; x < provider.getWidth(); x++){
+            for(int y = 0; y < provider.getHeight(); y++){
+                if(flat != null){
+                    applyChanges(flat, x, y, false);
+                }else{
+                    applyChanges(x, y, false);
+                }
+            }
+        }
+    }
 
-                // Validate cell
-                if(provider.isSolid(x, y)){
-                    provider.setLiquid(x, y, 0);
-                    continue;
+    /** Runs a cycle over active chunks only. Changes are cleared as they are applied, so only touched cells are reset. */
+    private void runActiveCycle(){
+        int width = provider.getWidth(), height = provider.getHeight();
+        ArrayFluidProvider flat = provider instanceof ArrayFluidProvider ? (ArrayFluidProvider) provider : null;
+
+        // Main loop, column by column to keep the same order as a full update; chunks woken along the way are picked up
+        for(int x = 0; x < width; x++){
+            int cx = x / chunkSize;
+            for(int cy = 0; cy < chunksY; cy++){
+                if(!active[cx * chunksY + cy]) continue;
+
+                for(int y = cy * chunkSize, endy = Math.min(y + chunkSize, height); y < endy; y++){
+                    if(flat != null){
+                        updateCell(flat, x, y);
+                    }else{
+                        updateCell(x, y);
+                    }
                 }
+            }
+        }
 
-                float liquid = provider.getLiquid(x, y);
+        // Update cell values and put chunks without unsettled liquid to sleep
+        for(int cx = 0; cx < chunksX; cx++){
+            for(int cy = 0; cy < chunksY; cy++){
+                if(active[cx * chunksY + cy]){
+                    applyChunk(flat, cx, cy, chunkSize);
+                }
+            }
+        }
+    }
 
-                if(Mathf.zero(liquid))
-                    continue;
-                if(provider.isSettled(x, y))
-                    continue;
-                if(liquid < minValue){
-                    provider.setLiquid(x, y, 0);
-                    continue;
+    /**
+     * Runs a cycle over the allocated chunks of a sparse provider, in the same order as a full update.
+     * Chunks that are dry once changes are applied are freed.
+     */
+    private void runSparseCycle(SparseFluidProvider sparse){
+        int size = sparse.getChunkSize(), width = sparse.getWidth(), height = sparse.getHeight();
+        Array<Chunk> chunks = sparseChunks;
+
+        chunks.clear();
+        for(Chunk chunk : sparse.chunks()){
+            chunks.add(chunk);
+        }
+        chunks.sort(chunkOrder);
+
+        // Main loop over each column of chunks; chunks allocated along the way are dry until changes are applied, so they can be skipped
+        for(int i = 0; i < chunks.size; ){
+            int cx = chunks.get(i).x, end = i;
+            while(end < chunks.size && chunks.get(end).x == cx) end++;
+
+            for(int x = cx * size, endx = Math.min(x + size, width); x < endx; x++){
+                for(int j = i; j < end; j++){
+                    int cy = chunks.get(j).y;
+                    for(int y = cy * size, endy = Math.min(y + size, height); y < endy; y++){
+                        updateCell(x, y);
+                    }
                 }
+            }
 
+            i = end;
+        }
 
-                // Keep track of how much liquid this cell started off with
-                float remainingValue = liquid;
+        // Update cell values of every chunk, including new ones
+        chunks.clear();
+        for(Chunk chunk : sparse.chunks()){
+            chunks.add(chunk);
+        }
 
-                // Flow to bottom cell
-                if(!provider.isSolid(x, y - 1)){
+        for(Chunk chunk : chunks){
+            boolean wet = false;
 
-                    float botl = provider.getLiquid(x, y - 1);
+            for(int x = chunk.x * size, endx = Math.min(x + size, width); x < endx; x++){
+                for(int y = chunk.y * size, endy = Math.min(y + size, height); y < endy; y++){
+                    applyChanges(x, y, true);
+                    wet |= sparse.getLiquid(x, y) != 0;
+                }
+            }
 
-                    // Determine rate of flow
-                    flow = CalculateVerticalFlowValue(liquid, botl) - botl;
-                    if(botl > 0 && flow > minFlow)
-                        flow *= flowSpeed;
+            if(!wet) sparse.free(chunk);
+        }
+    }
 
-                    // Constrain flow
-                    flow = Math.max(flow, 0);
-                    if(flow > Math.min(maxFlow, liquid))
-                        flow = Math.min(maxFlow, liquid);
+    /** Applies the changes of a chunk and resets them. In active mode, the chunk is put to sleep if it has no unsettled liquid left. */
+    private void applyChunk(ArrayFluidProvider flat, int cx, int cy, int size){
+        int width = provider.getWidth(), height = provider.getHeight();
+        boolean awake = false;
 
-                    // Update temp values
-                    if(!Mathf.zero(flow)){
-                        remainingValue -= flow;
-                        provider.setChanges(x, y, provider.getChanges(x, y) - flow);
-                        provider.setChanges(x, y - 1, provider.getChanges(x, y - 1) + flow);
-                        provider.setSettled(x, y - 1, false);
-                        provider.setSettleCount(x, y - 1, 0);
-                    }
-                }
+        for(int x = cx * size, endx = Math.min(x + size, width); x < endx; x++){
+            for(int y = cy * size, endy = Math.min(y + size, height); y < endy; y++){
+                awake |= flat != null ? applyChanges(flat, x, y, true) : applyChanges(x, y, true);
+            }
+        }
+
+        if(active != null) active[cx * chunksY + cy] = awake;
+    }
+
+    private void updateChunk(ArrayFluidProvider flat, int cx, int cy, int size){
+        int width = provider.getWidth(), height = provider.getHeight();
 
-                // Check to ensure we still have liquid in this cell
-                if(remainingValue < minValue){
-                    add(x, y, -remainingValue);
-                    continue;
+        for(int x = cx * size, endx = Math.min(x + size, width); x < endx; x++){
+            for(int y = cy * size, endy = Math.min(y + size, height); y < endy; y++){
+                if(flat != null){
+                    updateCell(flat, x, y);
+                }else{
+                    updateCell(x, y);
                 }
+            }
+        }
+    }
 
-                // Flow to left cell
-                if(!provider.isSolid(x - 1, y)){
+    /** Runs a cycle on the pool: four checkerboard passes updating chunks, then one pass applying their changes. */
+    private void runParallelCycle(){
+        if(active != null && chunkSize < 2)
+            throw new IllegalArgumentException("Parallel simulation requires an active chunk size of at least 2.");
 
-                    // Calculate flow rate
-                    flow = (remainingValue - provider.getLiquid(x - 1, y)) / 4f;
-                    if(flow > minFlow)
-                        flow *= flowSpeed;
+        ArrayFluidProvider flat = provider instanceof ArrayFluidProvider ? (ArrayFluidProvider) provider : null;
+        int size = active != null ? chunkSize : parallelChunkSize;
+        int cw = (provider.getWidth() + size - 1) / size, ch = (provider.getHeight() + size - 1) / size;
 
-                    // constrain flow
-                    flow = Math.max(flow, 0);
-                    if(flow > Math.min(maxFlow, remainingValue))
-                        flow = Math.min(maxFlow, remainingValue);
+        if(active == null) provider.clearChanges();
 
-                    // Adjust temp values
-                    if(flow != 0){
-                        remainingValue -= flow;
-                        add(x, y, -flow);
-                        add(x - 1, y, flow);
-                    }
-                }
+        //chunks of one color are at least a chunk apart, so the cells they write around their edges never overlap
+        for(int phase = 0; phase < 4; phase++){
+            pool.invoke(new ChunkTask(flat, size, phase >> 1, 2, ch, phase & 1, cw, false));
+        }
 
-                // Check to ensure we still have liquid in this cell
-                if(remainingValue < minValue){
-                    add(x, y, -remainingValue);
-                    continue;
-                }
+        pool.invoke(new ChunkTask(flat, size, 0, 1, ch, 0, cw, true));
+    }
 
-                // Flow to right cell
-                if(!provider.isSolid(x + 1, y)){
+    /**
+     * Applies the changes of a cell, optionally resetting them.
+     * @return whether the cell may still need updating: it has liquid that is unsettled, inside a solid or below the minimum.
+     */
+    private boolean applyChanges(int x, int y, boolean reset){
+        provider.setLiquid(x, y, provider.getLiquid(x, y) + provider.getChanges(x, y));
+        if(provider.getLiquid(x, y) < minValue){
+            provider.setLiquid(x, y, 0);
+            provider.setSettled(x, y, false);
+            provider.setSettleCount(x, y, 0);
+        }
 
-                    // calc flow rate
-                    flow = (remainingValue - provider.getLiquid(x + 1, y)) / 3f;
-                    if(flow > minFlow)
-                        flow *= flowSpeed;
+        if(reset) provider.setChanges(x, y, 0);
 
-                    // constrain flow
-                    flow = Math.max(flow, 0);
-                    if(flow > Math.min(maxFlow, remainingValue))
-                        flow = Math.min(maxFlow, remainingValue);
+        float liquid = provider.getLiquid(x, y);
+        return !Mathf.zero(liquid) && (!provider.isSettled(x, y) || provider.isSolid(x, y) || liquid < minValue);
+    }
 
-                    // Adjust temp values
-                    if(flow != 0){
-                        remainingValue -= flow;
-                        add(x, y, -flow);
-                        add(x + 1, y, flow);
-                    }
-                }
+    /** {@link #applyChanges(int, int, boolean)} for flat providers. */
+    private boolean applyChanges(ArrayFluidProvider p, int x, int y, boolean reset){
+        int i = p.index(x, y);
+        float liquid = p.liquid[i] + p.changes[i];
 
-                // Check to ensure we still have liquid in this cell
-                if(remainingValue < minValue){
-                    add(x, y, -remainingValue);
-                    continue;
-                }
+        if(liquid < minValue){
+            liquid = 0;
+            p.settled[i] = false;
+            p.settlecount[i] = 0;
+        }
+
+        p.liquid[i] = liquid;
+        if(reset) p.changes[i] = 0;
+
+        return !Mathf.zero(liquid) && (!p.settled[i] || p.solid[i] || liquid < minValue);
+    }
 
-                // Flow to Top cell
-                if(!provider.isSolid(x, y + 1)){
+    private void updateCell(int x, int y){
+        float flow;
 
-                    flow = remainingValue - CalculateVerticalFlowValue(remainingValue, provider.getLiquid(x, y + 1));
-                    if(flow > minFlow)
-                        flow *= flowSpeed;
+        // Validate cell
+        if(provider.isSolid(x, y)){
+            provider.setLiquid(x, y, 0);
+            return;
+        }
 
-                    // constrain flow
-                    flow = Math.max(flow, 0);
-                    if(flow > Math.min(maxFlow, remainingValue))
-                        flow = Math.min(maxFlow, remainingValue);
+        float liquid = provider.getLiquid(x, y);
 
-                    // Adjust values
-                    if(flow != 0){
-                        remainingValue -= flow;
-                        add(x, y, -flow);
-                        add(x, y + 1, flow);
-                    }
-                }
+        if(Mathf.zero(liquid))
+            return;
+        if(provider.isSettled(x, y))
+            return;
+        if(liquid < minValue){
+            provider.setLiquid(x, y, 0);
+            return;
+        }
 
-                // Check to ensure we still have liquid in this cell
-                if(remainingValue < minValue){
-                    add(x, y, -remainingValue);
-                    continue;
-                }
+        // Keep track of how much liquid this cell started off with
+        float remainingValue = liquid;
 
-                // Check if cell is settled
-                if(MathUtils.isEqual(liquid, remainingValue)){
-                    provider.setSettleCount(x, y, provider.getSettleCount(x, y) + 1);
-                    if(provider.getSettleCount(x, y) >= 10){
-                        provider.setSettled(x, y, true);
-                    }
-                }else{
-                    provider.setSettled(x + 1, y, false);
-                    provider.setSettled(x - 1, y, false);
-                    provider.setSettled(x, y + 1, false);
-                    provider.setSettled(x, y - 1, false);
-                }
+        // Flow to bottom cell
+        if(!provider.isSolid(x, y - 1)){
+
+            float botl = provider.getLiquid(x, y - 1);
+
+            // Determine rate of flow
+            flow = CalculateVerticalFlowValue(liquid, botl) - botl;
+            if(botl > 0 && flow > minFlow)
+                flow *= flowSpeed;
+
+            // Constrain flow
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, liquid))
+                flow = Math.min(maxFlow, liquid);
+
+            // Update temp values
+            if(!Mathf.zero(flow)){
+                remainingValue -= flow;
+                provider.setChanges(x, y, provider.getChanges(x, y) - flow);
+                provider.setChanges(x, y - 1, provider.getChanges(x, y - 1) + flow);
+                provider.setSettled(x, y - 1, false);
+                provider.setSettleCount(x, y - 1, 0);
+                wake(x, y - 1);
             }
         }
 
-        // Update Cell values
-        for(int x = 0; x < provider.getWidth(); x++){
-            for(int y = 0; y < provider.getHeight(); y++){
-                provider.setLiquid(x, y, provider.getLiquid(x, y) + provider.getChanges(x, y));
-                if(provider.getLiquid(x, y) < minValue){
-                    provider.setLiquid(x, y, 0);
-                    provider.setSettled(x, y, false);
-                    provider.setSettleCount(x, y, 0);
-                }
+        // Check to ensure we still have liquid in this cell
+        if(remainingValue < minValue){
+            add(x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to left cell
+        if(!provider.isSolid(x - 1, y)){
+
+            // Calculate flow rate
+            flow = (remainingValue - provider.getLiquid(x - 1, y)) / 4f;
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            // constrain flow
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            // Adjust temp values
+            if(flow != 0){
+                remainingValue -= flow;
+                add(x, y, -flow);
+                add(x - 1, y, flow);
             }
         }
+
+        // Check to ensure we still have liquid in this cell
+        if(remainingValue < minValue){
+            add(x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to right cell
+        if(!provider.isSolid(x + 1, y)){
+
+            // calc flow rate
+            flow = (remainingValue - provider.getLiquid(x + 1, y)) / 3f;
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            // constrain flow
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            // Adjust temp values
+            if(flow != 0){
+                remainingValue -= flow;
+                add(x, y, -flow);
+                add(x + 1, y, flow);
+            }
+        }
+
+        // Check to ensure we still have liquid in this cell
+        if(remainingValue < minValue){
+            add(x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to Top cell
+        if(!provider.isSolid(x, y + 1)){
+
+            flow = remainingValue - CalculateVerticalFlowValue(remainingValue, provider.getLiquid(x, y + 1));
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            // constrain flow
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            // Adjust values
+            if(flow != 0){
+                remainingValue -= flow;
+                add(x, y, -flow);
+                add(x, y + 1, flow);
+            }
+        }
+
+        // Check to ensure we still have liquid in this cell
+        if(remainingValue < minValue){
+            add(x, y, -remainingValue);
+            return;
+        }
+
+        // Check if cell is settled
+        if(MathUtils.isEqual(liquid, remainingValue)){
+            provider.setSettleCount(x, y, provider.getSettleCount(x, y) + 1);
+            if(provider.getSettleCount(x, y) >= 10){
+                provider.setSettled(x, y, true);
+            }
+        }else{
+            provider.setSettled(x + 1, y, false);
+            provider.setSettled(x - 1, y, false);
+            provider.setSettled(x, y + 1, false);
+            provider.setSettled(x, y - 1, false);
+            wake(x + 1, y);
+            wake(x - 1, y);
+            wake(x, y + 1);
+            wake(x, y - 1);
+        }
     }
 
+    /**
+     * {@link #updateCell(int, int)} for flat providers, working on the arrays directly.
+     * Neighbours are never out of bounds thanks to the solid border.
+     */
+    private void updateCell(ArrayFluidProvider p, int x, int y){
+        float[] liquids = p.liquid, changes = p.changes;
+        boolean[] solid = p.solid, settled = p.settled;
+        int[] settlecount = p.settlecount;
+        int i = p.index(x, y), stride = p.stride;
+        int bottom = i - 1, top = i + 1, left = i - stride, right = i + stride;
+        float flow;
+
+        // Validate cell
+        if(solid[i]){
+            liquids[i] = 0;
+            return;
+        }
+
+        float liquid = liquids[i];
+
+        if(Mathf.zero(liquid) || settled[i])
+            return;
+        if(liquid < minValue){
+            liquids[i] = 0;
+            return;
+        }
+
+        float remainingValue = liquid;
+
+        // Flow to bottom cell
+        if(!solid[bottom]){
+            float botl = liquids[bottom];
+
+            flow = CalculateVerticalFlowValue(liquid, botl) - botl;
+            if(botl > 0 && flow > minFlow)
+                flow *= flowSpeed;
+
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, liquid))
+                flow = Math.min(maxFlow, liquid);
+
+            if(!Mathf.zero(flow)){
+                remainingValue -= flow;
+                changes[i] -= flow;
+                changes[bottom] += flow;
+                settled[bottom] = false;
+                settlecount[bottom] = 0;
+                wake(x, y - 1);
+            }
+        }
+
+        if(remainingValue < minValue){
+            add(p, i, x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to left cell
+        if(!solid[left]){
+            flow = (remainingValue - liquids[left]) / 4f;
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            if(flow != 0){
+                remainingValue -= flow;
+                add(p, i, x, y, -flow);
+                add(p, left, x - 1, y, flow);
+            }
+        }
+
+        if(remainingValue < minValue){
+            add(p, i, x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to right cell
+        if(!solid[right]){
+            flow = (remainingValue - liquids[right]) / 3f;
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            if(flow != 0){
+                remainingValue -= flow;
+                add(p, i, x, y, -flow);
+                add(p, right, x + 1, y, flow);
+            }
+        }
+
+        if(remainingValue < minValue){
+            add(p, i, x, y, -remainingValue);
+            return;
+        }
+
+        // Flow to top cell
+        if(!solid[top]){
+            flow = remainingValue - CalculateVerticalFlowValue(remainingValue, liquids[top]);
+            if(flow > minFlow)
+                flow *= flowSpeed;
+
+            flow = Math.max(flow, 0);
+            if(flow > Math.min(maxFlow, remainingValue))
+                flow = Math.min(maxFlow, remainingValue);
+
+            if(flow != 0){
+                remainingValue -= flow;
+                add(p, i, x, y, -flow);
+                add(p, top, x, y + 1, flow);
+            }
+        }
+
+        if(remainingValue < minValue){
+            add(p, i, x, y, -remainingValue);
+            return;
+        }
+
+        // Check if cell is settled
+        if(MathUtils.isEqual(liquid, remainingValue)){
+            if(++settlecount[i] >= 10){
+                settled[i] = true;
+            }
+        }else{
+            //border cells may be unsettled too, but are never read
+            settled[right] = false;
+            settled[left] = false;
+            settled[top] = false;
+            settled[bottom] = false;
+            wake(x + 1, y);
+            wake(x - 1, y);
+            wake(x, y + 1);
+            wake(x, y - 1);
+        }
+    }
+
+    private void add(ArrayFluidProvider p, int i, int x, int y, float amount){
+        p.changes[i] += amount;
+        p.settled[i] = false;
+        p.settlecount[i] = 0;
+        wake(x, y);
+    }
+
+    /** Updates or applies every step-th chunk starting from an offset, splitting the columns of chunks between workers. */
+    class ChunkTask extends RecursiveAction{
+        final ArrayFluidProvider flat;
+        final int size, offsetY, step, ch;
+        final int fromX, toX;
+        final boolean apply;
+
+        ChunkTask(ArrayFluidProvider flat, int size, int offsetY, int step, int ch, int fromX, int toX, boolean apply){
+            this.flat = flat;
+            this.size = size;
+            this.offsetY = offsetY;
+            this.step = step;
+            this.ch = ch;
+            this.fromX = fromX;
+            this.toX = toX;
+            this.apply = apply;
+        }
+
+        @Override
+        protected void compute(){
+            int columns = (toX - fromX + step - 1) / step;
+
+            if(columns > 1){
+                int mid = fromX + columns / 2 * step;
+                invokeAll(new ChunkTask(flat, size, offsetY, step, ch, fromX, mid, apply),
+                        new ChunkTask(flat, size, offsetY, step, ch, mid, toX, apply));
+                return;
+            }
+
+            for(int cx = fromX; cx < toX; cx += step){
+                for(int cy = offsetY; cy < ch; cy += step){
+                    if(active != null && !active[cx * chunksY + cy]) continue;
+
+                    if(apply){
+                        applyChunk(flat, cx, cy, size);
+                    }else{
+                        updateChunk(flat, cx, cy, size);
+                    }
+                }
+            }
+        }
+    }
 }
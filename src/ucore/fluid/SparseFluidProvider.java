@@ -0,0 +1,196 @@
+package ucore.fluid;
+
+import com.badlogic.gdx.utils.LongMap.Values;
+import ucore.function.TileCollider;
+import ucore.util.GridMap;
+
+/**
+ * A fluid provider that stores liquid in fixed-size chunks, allocated when liquid first enters them and freed once they dry out.
+ * Memory scales with the wet area of the map instead of its size, and {@link Fluidsim} only visits allocated chunks.
+ * Solidity is not stored; it is read from a collider instead. Not safe for parallel simulation.
+ * <p>
+ * Providers created without a size are unbounded: any cell coordinate, including negative ones, can hold liquid,
+ * and only the collider keeps liquid from spreading forever.
+ */
+public class SparseFluidProvider implements FluidProvider{
+    private final int width, height, chunkSize;
+    private final boolean bounded;
+    private final TileCollider collider;
+    private final GridMap<Chunk> chunks = new GridMap<>();
+    /** Last chunk looked up, as most accesses are to the same chunk. */
+    private Chunk last;
+
+    public SparseFluidProvider(int width, int height, int chunkSize, TileCollider collider){
+        this(width, height, chunkSize, true, collider);
+    }
+
+    public SparseFluidProvider(int width, int height, TileCollider collider){
+        this(width, height, 32, collider);
+    }
+
+    /** Creates an unbounded provider. */
+    public SparseFluidProvider(int chunkSize, TileCollider collider){
+        this(Integer.MAX_VALUE, Integer.MAX_VALUE, chunkSize, false, collider);
+    }
+
+    /** Creates an unbounded provider with chunks of 32x32 cells. */
+    public SparseFluidProvider(TileCollider collider){
+        this(32, collider);
+    }
+
+    private SparseFluidProvider(int width, int height, int chunkSize, boolean bounded, TileCollider collider){
+        this.width = width;
+        this.height = height;
+        this.chunkSize = chunkSize;
+        this.bounded = bounded;
+        this.collider = collider;
+    }
+
+    public boolean isBounded(){
+        return bounded;
+    }
+
+    public int getChunkSize(){
+        return chunkSize;
+    }
+
+    /** Returns all allocated chunks. */
+    public Values<Chunk> chunks(){
+        return chunks.values();
+    }
+
+    public int chunkCount(){
+        return chunks.size();
+    }
+
+    /** Frees a chunk. Any liquid left in it is lost. */
+    public void free(Chunk chunk){
+        chunks.remove(chunk.x, chunk.y);
+        if(last == chunk) last = null;
+    }
+
+    private boolean inBounds(int x, int y){
+        return !bounded || (x >= 0 && y >= 0 && x < width && y < height);
+    }
+
+    /** Returns the chunk containing a cell, or null if it is not allocated. */
+    private Chunk get(int x, int y){
+        int cx = Math.floorDiv(x, chunkSize), cy = Math.floorDiv(y, chunkSize);
+        if(last != null && last.x == cx && last.y == cy) return last;
+
+        Chunk chunk = chunks.get(cx, cy);
+        if(chunk != null) last = chunk;
+        return chunk;
+    }
+
+    private Chunk obtain(int x, int y){
+        Chunk chunk = get(x, y);
+        if(chunk == null){
+            chunk = new Chunk(Math.floorDiv(x, chunkSize), Math.floorDiv(y, chunkSize), chunkSize);
+            chunks.put(chunk.x, chunk.y, chunk);
+            last = chunk;
+        }
+        return chunk;
+    }
+
+    private int index(int x, int y){
+        return Math.floorMod(x, chunkSize) * chunkSize + Math.floorMod(y, chunkSize);
+    }
+
+    @Override
+    public boolean isSolid(int x, int y){
+        return !inBounds(x, y) || collider.solid(x, y);
+    }
+
+    @Override
+    public boolean isSettled(int x, int y){
+        Chunk chunk = get(x, y);
+        return chunk != null && chunk.settled[index(x, y)];
+    }
+
+    @Override
+    public void setSettled(int x, int y, boolean settle){
+        if(!inBounds(x, y)) return;
+        Chunk chunk = get(x, y);
+        if(chunk != null) chunk.settled[index(x, y)] = settle;
+    }
+
+    @Override
+    public int getSettleCount(int x, int y){
+        Chunk chunk = get(x, y);
+        return chunk == null ? 0 : chunk.settlecount[index(x, y)];
+    }
+
+    @Override
+    public void setSettleCount(int x, int y, int count){
+        if(!inBounds(x, y)) return;
+        Chunk chunk = get(x, y);
+        if(chunk != null) chunk.settlecount[index(x, y)] = count;
+    }
+
+    @Override
+    public float getLiquid(int x, int y){
+        Chunk chunk = get(x, y);
+        return chunk == null ? 0 : chunk.liquid[index(x, y)];
+    }
+
+    @Override
+    public void setLiquid(int x, int y, float amount){
+        if(!inBounds(x, y)) return;
+        Chunk chunk = amount == 0 ? get(x, y) : obtain(x, y);
+        if(chunk != null) chunk.liquid[index(x, y)] = amount;
+    }
+
+    @Override
+    public void clearChanges(){
+        for(Chunk chunk : chunks.values()){
+            for(int i = 0; i < chunk.changes.length; i++){
+                chunk.changes[i] = 0;
+            }
+        }
+    }
+
+    @Override
+    public float getChanges(int x, int y){
+        Chunk chunk = get(x, y);
+        return chunk == null ? 0 : chunk.changes[index(x, y)];
+    }
+
+    @Override
+    public void setChanges(int x, int y, float amount){
+        if(!inBounds(x, y)) return;
+        Chunk chunk = amount == 0 ? get(x, y) : obtain(x, y);
+        if(chunk != null) chunk.changes[index(x, y)] = amount;
+    }
+
+    /** Returns the width of the provider, or {@link Integer#MAX_VALUE} if it is unbounded. */
+    @Override
+    public int getWidth(){
+        return width;
+    }
+
+    /** Returns the height of the provider, or {@link Integer#MAX_VALUE} if it is unbounded. */
+    @Override
+    public int getHeight(){
+        return height;
+    }
+
+    /** A square of cells, stored column by column. Coordinates are in chunks. */
+    public static class Chunk{
+        public final int x, y;
+
+        final float[] liquid;
+        final float[] changes;
+        final boolean[] settled;
+        final int[] settlecount;
+
+        Chunk(int x, int y, int size){
+            this.x = x;
+            this.y = y;
+            liquid = new float[size * size];
+            changes = new float[size * size];
+            settled = new boolean[size * size];
+            settlecount = new int[size * size];
+        }
+    }
+}
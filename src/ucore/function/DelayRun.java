@@ -3,13 +3,19 @@ package ucore.function;
 import com.badlogic.gdx.utils.Pool.Poolable;
 
 public class DelayRun implements Poolable{
-    public float delay;
-    public Runnable run;
+    /** Value of {@link ucore.core.Timers#time()} at which this runs. */
+    public double time;
+    /** Cancellation handle returned when scheduling. */
+    public int id;
+    /** Position in the scheduler heap. */
+    public int index;
     public Runnable finish;
 
     @Override
     public void reset(){
-        delay = 0;
-        run = finish = null;
+        time = 0;
+        id = 0;
+        index = -1;
+        finish = null;
     }
 }
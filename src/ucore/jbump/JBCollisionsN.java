@@ -15,21 +15,18 @@
  */
 package ucore.jbump;
 
+import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.BooleanArray;
 import com.badlogic.gdx.utils.FloatArray;
-import com.badlogic.gdx.utils.IntIntMap;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.List;
 
 import static ucore.jbump.JBRectUtils.getSquareDistance;
 
 /**
  * @author tao
  */
-public class JBCollisionsN implements Comparator<Integer>{
+public class JBCollisionsN{
+    /** Collision counts up to this are sorted with an insertion sort. */
+    private static final int insertionSortThreshold = 24;
 
     private final BooleanArray overlaps = new BooleanArray();
     private final FloatArray tis = new FloatArray();
@@ -48,12 +45,14 @@ public class JBCollisionsN implements Comparator<Integer>{
     private final FloatArray w2s = new FloatArray();
     private final FloatArray h2s = new FloatArray();
     private final JBCollision collision = new JBCollision();
-    private final ArrayList<Integer> order = new ArrayList<>();
-    private final IntIntMap swapMap = new IntIntMap();
+    private int[] order = new int[16], orderTmp = new int[16];
+    private float[] floatTmp = new float[16];
+    private boolean[] booleanTmp = new boolean[16];
+    private Object[] objectTmp = new Object[16];
     private int size = 0;
-    public ArrayList<JBWorld.JBItem> items = new ArrayList<>();
-    public ArrayList<JBWorld.JBItem> others = new ArrayList<>();
-    public ArrayList<JBResponse> types = new ArrayList<>();
+    public Array<JBWorld.JBItem> items = new Array<>();
+    public Array<JBWorld.JBItem> others = new Array<>();
+    public Array<JBResponse> types = new Array<>();
 
     public void add(JBCollision col){
         add(col.overlaps, col.ti, col.move.x, col.move.y, col.normal.x, col.normal.y, col.touch.x, col.touch.y, col.itemRect.x, col.itemRect.y, col.itemRect.width, col.itemRect.height, col.otherRect.x, col.otherRect.y, col.otherRect.width, col.otherRect.height, col.item, col.other, col.type);
@@ -112,9 +111,9 @@ public class JBCollisionsN implements Comparator<Integer>{
             y2s.removeIndex(index);
             w2s.removeIndex(index);
             h2s.removeIndex(index);
-            items.remove(index);
-            others.remove(index);
-            types.remove(index);
+            items.removeIndex(index);
+            others.removeIndex(index);
+            types.removeIndex(index);
         }
     }
 
@@ -149,90 +148,119 @@ public class JBCollisionsN implements Comparator<Integer>{
         types.clear();
     }
 
-    public <T extends Comparable<T>> void keySort(final List<Integer> indices, List<?> list){
-        swapMap.clear();
-        for(int i = 0; i < indices.size(); i++){
-            int k = indices.get(i);
-            while(swapMap.containsKey(k)){
-                k = swapMap.get(k, 0);
-            }
+    /** Sorts all collisions by time of impact, then by distance, without boxing or allocating. */
+    public void sort(){
+        if(order.length < size){
+            order = new int[size];
+            orderTmp = new int[size];
+            floatTmp = new float[size];
+            booleanTmp = new boolean[size];
+            objectTmp = new Object[size];
+        }
 
-            swapMap.put(i, k);
+        for(int i = 0; i < size; i++){
+            order[i] = i;
         }
 
-        for(IntIntMap.Entry e : swapMap){
-            Collections.swap(list, e.key, e.value);
+        if(size <= insertionSortThreshold){
+            insertionSort(0, size);
+        }else{
+            mergeSort(0, size);
         }
+
+        permute(overlaps);
+        permute(tis);
+        permute(moveXs);
+        permute(moveYs);
+        permute(normalXs);
+        permute(normalYs);
+        permute(touchXs);
+        permute(touchYs);
+        permute(x1s);
+        permute(y1s);
+        permute(w1s);
+        permute(h1s);
+        permute(x2s);
+        permute(y2s);
+        permute(w2s);
+        permute(h2s);
+        permute(items);
+        permute(others);
+        permute(types);
     }
 
-    public <T extends Comparable<T>> void keySort(final List<Integer> indices, FloatArray list){
-        swapMap.clear();
-        for(int i = 0; i < indices.size(); i++){
-            int k = indices.get(i);
-            while(swapMap.containsKey(k)){
-                k = swapMap.get(k, 0);
+    private void insertionSort(int from, int to){
+        int[] order = this.order;
+        for(int i = from + 1; i < to; i++){
+            int key = order[i];
+            int j = i - 1;
+            while(j >= from && compare(order[j], key) > 0){
+                order[j + 1] = order[j];
+                j--;
             }
+            order[j + 1] = key;
+        }
+    }
 
-            swapMap.put(i, k);
+    /** Stable merge sort of the order array, for the rare crowded cases. */
+    private void mergeSort(int from, int to){
+        if(to - from <= insertionSortThreshold){
+            insertionSort(from, to);
+            return;
         }
 
-        for(IntIntMap.Entry e : swapMap){
-            list.swap(e.key, e.value);
+        int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        if(compare(order[mid - 1], order[mid]) <= 0) return;
+
+        System.arraycopy(order, from, orderTmp, from, to - from);
+        int i = from, j = mid, k = from;
+        while(i < mid && j < to){
+            order[k++] = compare(orderTmp[j], orderTmp[i]) < 0 ? orderTmp[j++] : orderTmp[i++];
         }
+        while(i < mid) order[k++] = orderTmp[i++];
+        while(j < to) order[k++] = orderTmp[j++];
     }
 
-    public <T extends Comparable<T>> void keySort(final List<Integer> indices, BooleanArray list){
-        swapMap.clear();
-        for(int i = 0; i < indices.size(); i++){
-            int k = indices.get(i);
-            while(swapMap.containsKey(k)){
-                k = swapMap.get(k, 0);
-            }
-
-            swapMap.put(i, k);
+    private void permute(FloatArray list){
+        float[] values = list.items;
+        for(int i = 0; i < size; i++){
+            floatTmp[i] = values[order[i]];
         }
+        System.arraycopy(floatTmp, 0, values, 0, size);
+    }
 
-        for(IntIntMap.Entry e : swapMap){
-            list.swap(e.key, e.value);
+    private void permute(BooleanArray list){
+        boolean[] values = list.items;
+        for(int i = 0; i < size; i++){
+            booleanTmp[i] = values[order[i]];
         }
+        System.arraycopy(booleanTmp, 0, values, 0, size);
     }
 
-    public void sort(){
-        order.clear();
+    private void permute(Array<?> list){
+        Object[] values = list.items;
+        for(int i = 0; i < size; i++){
+            objectTmp[i] = values[order[i]];
+        }
+        System.arraycopy(objectTmp, 0, values, 0, size);
         for(int i = 0; i < size; i++){
-            order.add(i);
+            objectTmp[i] = null;
         }
-        Collections.sort(order, this);
-        keySort(order, overlaps);
-        keySort(order, tis);
-        keySort(order, moveXs);
-        keySort(order, moveYs);
-        keySort(order, normalXs);
-        keySort(order, normalYs);
-        keySort(order, touchXs);
-        keySort(order, touchYs);
-        keySort(order, x1s);
-        keySort(order, y1s);
-        keySort(order, w1s);
-        keySort(order, h1s);
-        keySort(order, x2s);
-        keySort(order, y2s);
-        keySort(order, w2s);
-        keySort(order, h2s);
-        keySort(order, items);
-        keySort(order, others);
-        keySort(order, types);
     }
 
-    @Override
-    public int compare(Integer a, Integer b){
-        if(tis.get(a) == (tis.get(b))){
+    private int compare(int a, int b){
+        float[] tis = this.tis.items;
+        if(tis[a] == tis[b]){
+            float[] x1s = this.x1s.items, y1s = this.y1s.items, w1s = this.w1s.items, h1s = this.h1s.items;
+            float[] x2s = this.x2s.items, y2s = this.y2s.items, w2s = this.w2s.items, h2s = this.h2s.items;
 
-            float ad = getSquareDistance(x1s.get(a), y1s.get(a), w1s.get(a), h1s.get(a), x2s.get(a), y2s.get(a), w2s.get(a), h2s.get(a));
-            float bd = getSquareDistance(x1s.get(a), y1s.get(a), w1s.get(a), h1s.get(a), x2s.get(b), y2s.get(b), w2s.get(b), h2s.get(b));
+            float ad = getSquareDistance(x1s[a], y1s[a], w1s[a], h1s[a], x2s[a], y2s[a], w2s[a], h2s[a]);
+            float bd = getSquareDistance(x1s[a], y1s[a], w1s[a], h1s[a], x2s[b], y2s[b], w2s[b], h2s[b]);
 
             return Float.compare(ad, bd);
         }
-        return Float.compare(tis.get(a), tis.get(b));
+        return Float.compare(tis[a], tis[b]);
     }
 }
@@ -28,12 +28,8 @@ import static java.lang.Math.min;
 public class JBRectUtils{
 
     public static final float DELTA = 1e-5f;
-    private final static Rectangle diff = new Rectangle();
-    private final static Vector2 nearestCorner = new Vector2();
-    private final static Vector2 ti = new Vector2();
-    private final static Vector2 n1 = new Vector2();
-    private final static Vector2 n2 = new Vector2();
-    private final static JBCollision col = new JBCollision();
+    //scratch is per thread, as worlds may check items in parallel
+    private final static ThreadLocal<Temps> temps = new ThreadLocal<>();
 
     public static void getNearestCorner(float x, float y, float w, float h, float px, float py, Vector2 result){
         result.set(nearest(px, x, x + w), nearest(y, y, y + h));
@@ -125,6 +121,10 @@ public class JBRectUtils{
     }
 
     public static JBCollision detectCollision(float x1, float y1, float w1, float h1, float x2, float y2, float w2, float h2, float goalX, float goalY){
+        Temps t = temps.get();
+        if(t == null) temps.set(t = new Temps());
+        Rectangle diff = t.diff;
+        Vector2 nearestCorner = t.nearestCorner, n1 = t.n1, n2 = t.n2;
         float dx = goalX - x1;
         float dy = goalY - y1;
 
@@ -147,9 +147,9 @@ public class JBRectUtils{
             ti = -wi * h1;
             overlaps = true;
         }else{
-            boolean intersect = getSegmentIntersectionIndices(x, y, w, h, 0, 0, dx, dy, -Float.MAX_VALUE, Float.MAX_VALUE, JBRectUtils.ti, n1, n2);
-            float ti1 = JBRectUtils.ti.x;
-            float ti2 = JBRectUtils.ti.y;
+            boolean intersect = getSegmentIntersectionIndices(x, y, w, h, 0, 0, dx, dy, -Float.MAX_VALUE, Float.MAX_VALUE, t.ti, n1, n2);
+            float ti1 = t.ti.x;
+            float ti2 = t.ti.y;
             float nx1 = n1.x;
             float ny1 = n1.y;
 
@@ -180,8 +180,8 @@ public class JBRectUtils{
                 tx = x1 + px;
                 ty = y1 + py;
             }else{
-                boolean intersect = getSegmentIntersectionIndices(x, y, w, h, 0, 0, dx, dy, -Float.MAX_VALUE, 1, JBRectUtils.ti, n1, n2);
-                float ti1 = JBRectUtils.ti.x;
+                boolean intersect = getSegmentIntersectionIndices(x, y, w, h, 0, 0, dx, dy, -Float.MAX_VALUE, 1, t.ti, n1, n2);
+                float ti1 = t.ti.x;
                 nx = n1.x;
                 ny = n1.y;
                 if(!intersect){
@@ -194,8 +194,8 @@ public class JBRectUtils{
             tx = x1 + dx * ti;
             ty = y1 + dy * ti;
         }
-        col.set(overlaps, ti, dx, dy, nx, ny, tx, ty, x1, y1, w1, h1, x2, y2, w2, h2);
-        return col;
+        t.col.set(overlaps, ti, dx, dy, nx, ny, tx, ty, x1, y1, w1, h1, x2, y2, w2, h2);
+        return t.col;
     }
 
     public static float nearest(float x, float a, float b){
@@ -205,4 +205,12 @@ public class JBRectUtils{
         return b;
     }
 
+    private static class Temps{
+        final Rectangle diff = new Rectangle();
+        final Vector2 nearestCorner = new Vector2();
+        final Vector2 ti = new Vector2();
+        final Vector2 n1 = new Vector2();
+        final Vector2 n2 = new Vector2();
+        final JBCollision col = new JBCollision();
+    }
 }
@@ -57,7 +57,7 @@ public interface JBResponse{
         return result;
     };
 
-    Result response(JBWorld world, JBCollision collision, float x, float y, float w, float h, float goalX, float goalY, CollisionFilter filter, Result result);
+    Result response(JBWorld<?> world, JBCollision collision, float x, float y, float w, float h, float goalX, float goalY, CollisionFilter filter, Result result);
 
     class Result{
 
@@ -18,11 +18,16 @@ package ucore.jbump;
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.LongMap;
 import com.badlogic.gdx.utils.ObjectSet;
+import ucore.function.Predicate;
 import ucore.jbump.JBCollision.CollisionFilter;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
@@ -34,19 +39,17 @@ import static java.lang.Math.min;
  */
 public class JBWorld<E>{
 
-    private final ArrayList<JBCell> getCellsTouchedBySegment_visited = new ArrayList<>();
-    private final ObjectSet<JBItem> project_visited = new ObjectSet<>();
-    private final Rectangle project_c = new Rectangle();
-    private final ObjectSet<JBItem> project_dictItemsInCellRect = new ObjectSet<>();
     private final Rectangle add_c = new Rectangle();
     private final Rectangle remove_c = new Rectangle();
     private final Rectangle update_c1 = new Rectangle();
     private final Rectangle update_c2 = new Rectangle();
-    private final ObjectSet<JBItem> check_visited = new ObjectSet<>();
-    private final Array<JBCollision> check_cols = new Array<>();
-    private final Array<JBCollision> check_projectedCols = new Array<>();
-    private final JBResponse.Result check_result = new JBResponse.Result();
-    private HashMap<Float, HashMap<Float, JBCell>> rows = new HashMap<>();
+    //scratch for project() and check(), per thread so that moveAll() can check independent items in parallel
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+    private final IntIntMap moveAll_claims = new IntIntMap();
+    private final Rectangle moveAll_c = new Rectangle();
+    private long[] moveAll_order = {};
+    private boolean[] moveAll_dependent = {};
+    private LongMap<JBCell<E>> cells = new LongMap<>();
     private JBGrid grid = new JBGrid();
     private boolean tileMode = true;
     private float cellSize = 64;
@@ -59,53 +62,48 @@ public class JBWorld<E>{
         this.tileMode = tileMode;
     }
 
-    private void addItemToCell(JBItem<E> item, float cx, float cy){
-        if(!rows.containsKey(cy)){
-            rows.put(cy, new HashMap<>());
-        }
+    private static long getKey(float cx, float cy){
+        return (((long) (int) cx) << 32) | (((int) cy) & 0xffffffffL);
+    }
+
+    private JBCell<E> getCell(float cx, float cy){
+        return cells.get(getKey(cx, cy));
+    }
 
-        HashMap<Float, JBCell> row = rows.get(cy);
-        if(!row.containsKey(cx)){
-            row.put(cx, new JBCell());
+    private void addItemToCell(JBItem<E> item, float cx, float cy){
+        long key = getKey(cx, cy);
+        JBCell<E> cell = cells.get(key);
+        if(cell == null){
+            cell = new JBCell<>();
+            cell.x = cx;
+            cell.y = cy;
+            cells.put(key, cell);
         }
-        JBCell cell = row.get(cx);
 
-        if(!cell.items.contains(item)){
+        if(!cell.items.contains(item, true)){
             cell.items.add(item);
             cell.itemCount = cell.itemCount + 1;
         }
     }
 
-    private boolean removeItemFromCell(JBItem item, float cx, float cy){
-        if(!rows.containsKey(cy)){
-            return false;
-        }
-        HashMap<Float, JBCell> row = rows.get(cy);
-        if(!row.containsKey(cx)){
-            return false;
-        }
-        JBCell cell = row.get(cx);
-        if(!cell.items.contains(item)){
+    private boolean removeItemFromCell(JBItem<E> item, float cx, float cy){
+        JBCell<E> cell = getCell(cx, cy);
+        if(cell == null || !cell.items.removeValue(item, true)){
             return false;
         }
-        cell.items.remove(item);
         cell.itemCount = cell.itemCount - 1;
         return true;
     }
 
-    private ObjectSet<JBItem> getDictItemsInCellRect(float cl, float ct, float cw, float ch, ObjectSet<JBItem> result){
+    private ObjectSet<JBItem<E>> getDictItemsInCellRect(float cl, float ct, float cw, float ch, ObjectSet<JBItem<E>> result){
         result.clear();
         for(float cy = ct; cy < ct + ch; cy++){
-            if(rows.containsKey(cy)){
-                HashMap<Float, JBCell> row = rows.get(cy);
-                for(float cx = cl; cx < cl + cw; cx++){
-                    if(row.containsKey(cx)){
-                        JBCell cell = row.get(cx);
-                        if(cell.itemCount > 0){
-                            for(JBItem item : cell.items){
-                                result.add(item);
-                            }
-                        }
+            for(float cx = cl; cx < cl + cw; cx++){
+                JBCell<E> cell = getCell(cx, cy);
+                if(cell != null && cell.itemCount > 0){
+                    Array<JBItem<E>> items = cell.items;
+                    for(int i = 0; i < items.size; i++){
+                        result.add(items.get(i));
                     }
                 }
             }
@@ -113,37 +111,92 @@ public class JBWorld<E>{
         return result;
     }
 
-    private ArrayList<JBCell> getCellsTouchedBySegment(float x1, float y1, float x2, float y2, final ArrayList<JBCell> result){
-        result.clear();
-        getCellsTouchedBySegment_visited.clear();
-        // use set
-        final ArrayList<JBCell> visited = getCellsTouchedBySegment_visited;
-        grid.traverse(cellSize, x1, y1, x2, y2, (cx, cy) -> {
-            if(!rows.containsKey(cy)){
-                return;
-            }
-            HashMap<Float, JBCell> row = rows.get(cy);
-            if(!row.containsKey(cx)){
-                return;
-            }
-            JBCell cell = row.get(cx);
-            if(visited.contains(cell)){
-                return;
+    private Scratch scratch(){
+        Scratch s = scratch.get();
+        if(s == null) scratch.set(s = new Scratch());
+        return s;
+    }
+
+    private Array<JBCell<E>> getCellsTouchedBySegment(float x1, float y1, float x2, float y2, Scratch s){
+        s.getCellsTouchedBySegment_result.clear();
+        s.getCellsTouchedBySegment_visited.clear();
+        s.grid.traverse(cellSize, x1, y1, x2, y2, s);
+        return s.getCellsTouchedBySegment_result;
+    }
+
+    /**
+     * Fills the out array with items whose rectangles intersect the segment, sorted by where the segment enters them.
+     * Only the cells crossed by the segment are checked.
+     *
+     * @param filter Which items to consider, or null for all.
+     * @param fractions If not null, filled with the fraction of the segment at which each item is entered; 0 if the segment starts inside it.
+     */
+    public Array<JBItem<E>> querySegment(float x1, float y1, float x2, float y2, Predicate<JBItem<E>> filter, Array<JBItem<E>> out, FloatArray fractions){
+        out.clear();
+        if(fractions != null) fractions.clear();
+
+        Scratch s = scratch();
+        ObjectSet<JBItem<E>> visited = s.querySegment_visited;
+        FloatArray weights = s.querySegment_weights;
+        visited.clear();
+        weights.clear();
+
+        Array<JBCell<E>> cells = getCellsTouchedBySegment(x1, y1, x2, y2, s);
+        for(int c = 0; c < cells.size; c++){
+            Array<JBItem<E>> items = cells.get(c).items;
+            for(int i = 0; i < items.size; i++){
+                JBItem<E> item = items.get(i);
+                if(!visited.add(item) || (filter != null && !filter.test(item))) continue;
+
+                Rectangle r = item.rect;
+                if(!JBRectUtils.getSegmentIntersectionIndices(r.x, r.y, r.width, r.height, x1, y1, x2, y2, 0, 1, s.querySegment_ti, s.querySegment_n1, s.querySegment_n2)){
+                    continue;
+                }
+
+                float ti1 = s.querySegment_ti.x, ti2 = s.querySegment_ti.y;
+                if(!((0 < ti1 && ti1 < 1) || (0 < ti2 && ti2 < 1))) continue;
+
+                //sort by the entry point on the infinite line, like bump.lua
+                JBRectUtils.getSegmentIntersectionIndices(r.x, r.y, r.width, r.height, x1, y1, x2, y2, -Float.MAX_VALUE, Float.MAX_VALUE, s.querySegment_ti, s.querySegment_n1, s.querySegment_n2);
+                float weight = s.querySegment_ti.x;
+
+                int index = weights.size;
+                while(index > 0 && weights.get(index - 1) > weight) index--;
+                weights.insert(index, weight);
+                out.insert(index, item);
+                if(fractions != null) fractions.insert(index, Math.max(ti1, 0f));
             }
-            visited.add(cell);
-            result.add(cell);
-        });
+        }
+
+        return out;
+    }
 
+    /**
+     * Returns the first item hit by the segment, or null if nothing is hit.
+     * If an item is hit and the hit vector is not null, it is set to the point where the segment enters the item.
+     */
+    public JBItem<E> raycast(float x1, float y1, float x2, float y2, Predicate<JBItem<E>> filter, Vector2 hit){
+        Scratch s = scratch();
+        querySegment(x1, y1, x2, y2, filter, s.raycast_items, s.raycast_fractions);
+        if(s.raycast_items.size == 0) return null;
+
+        JBItem<E> result = s.raycast_items.first();
+        if(hit != null){
+            float f = s.raycast_fractions.first();
+            hit.set(x1 + (x2 - x1) * f, y1 + (y2 - y1) * f);
+        }
+        s.raycast_items.clear();
         return result;
     }
 
-    public Array<JBCollision> project(JBItem item, float x, float y, float w, float h, float goalX, float goalY, Array<JBCollision> collisions){
+    public Array<JBCollision> project(JBItem<?> item, float x, float y, float w, float h, float goalX, float goalY, Array<JBCollision> collisions){
         return project(item, x, y, w, h, goalX, goalY, CollisionFilter.defaultFilter, collisions);
     }
 
-    public Array<JBCollision> project(JBItem item, float x, float y, float w, float h, float goalX, float goalY, CollisionFilter filter, Array<JBCollision> collisions){
+    public Array<JBCollision> project(JBItem<?> item, float x, float y, float w, float h, float goalX, float goalY, CollisionFilter filter, Array<JBCollision> collisions){
         collisions.clear();
-        ObjectSet<JBItem> visited = project_visited;
+        Scratch s = scratch();
+        ObjectSet<JBItem<?>> visited = s.project_visited;
         visited.clear();
         if(item != null){
             visited.add(item);
@@ -156,11 +209,11 @@ public class JBWorld<E>{
         float tw = tr - tl;
         float th = tb - tt;
 
-        grid.toCellRect(cellSize, tl, tt, tw, th, project_c);
-        float cl = project_c.x, ct = project_c.y, cw = project_c.width, ch = project_c.height;
+        s.grid.toCellRect(cellSize, tl, tt, tw, th, s.project_c);
+        float cl = s.project_c.x, ct = s.project_c.y, cw = s.project_c.width, ch = s.project_c.height;
 
-        ObjectSet<JBItem> dictItemsInCellRect = getDictItemsInCellRect(cl, ct, cw, ch, project_dictItemsInCellRect);
-        for(JBItem other : dictItemsInCellRect){
+        ObjectSet<JBItem<E>> dictItemsInCellRect = getDictItemsInCellRect(cl, ct, cw, ch, s.project_dictItemsInCellRect);
+        for(JBItem<E> other : dictItemsInCellRect){
             if(!visited.contains(other)){
                 visited.add(other);
                 JBResponse response = filter.filter(item, other);
@@ -195,14 +248,10 @@ public class JBWorld<E>{
    // }
 
     public int countCells(){
-        int count = 0;
-        for(HashMap<Float, JBCell> row : rows.values()){
-            count += row.keySet().size();
-        }
-        return count;
+        return cells.size;
     }
 
-    public boolean hasItem(JBItem item){
+    public boolean hasItem(JBItem<E> item){
         return item.rect != null;
     }
 
@@ -231,7 +280,7 @@ public class JBWorld<E>{
         return item;
     }
 
-    public void remove(JBItem item){
+    public void remove(JBItem<E> item){
         Rectangle rect = item.rect;
         if(rect == null) return;
         float x = rect.x, y = rect.y, w = rect.width, h = rect.height;
@@ -247,13 +296,13 @@ public class JBWorld<E>{
         }
     }
 
-    public void update(JBItem item, float x2, float y2){
+    public void update(JBItem<E> item, float x2, float y2){
         Rectangle rect = item.rect;
         float /* x = rect.x, y = rect.y, */ w = rect.width, h = rect.height;
         update(item, x2, y2, w, h);
     }
 
-    public void update(JBItem item, float x2, float y2, float w2, float h2){
+    public void update(JBItem<E> item, float x2, float y2, float w2, float h2){
         Rectangle rect = item.rect;
         float x1 = rect.x, y1 = rect.y, w1 = rect.width, h1 = rect.height;
         if(x1 != x2 || y1 != y2 || w1 != w2 || h1 != h2){
@@ -291,8 +340,17 @@ public class JBWorld<E>{
         }
     }
 
-    public JBResponse.Result check(JBItem item, float goalX, float goalY, final CollisionFilter filter){
-        ObjectSet<JBItem> visited = check_visited;
+    public JBResponse.Result check(JBItem<E> item, float goalX, float goalY, final CollisionFilter filter){
+        return check(item, goalX, goalY, filter, null);
+    }
+
+    /**
+     * Checks a move, optionally confined to a range of cells.
+     * If bounds is not null and a response moves the item to a touch point or goal outside those cells, the check stops and returns null.
+     */
+    private JBResponse.Result check(JBItem<E> item, float goalX, float goalY, final CollisionFilter filter, Rectangle bounds){
+        Scratch s = scratch();
+        ObjectSet<JBItem<?>> visited = s.check_visited;
         visited.clear();
         visited.add(item);
 
@@ -308,10 +366,10 @@ public class JBWorld<E>{
 
         Rectangle rect = item.rect;
         float x = rect.x, y = rect.y, w = rect.width, h = rect.height;
-        Array<JBCollision> cols = check_cols;
+        Array<JBCollision> cols = s.check_cols;
         cols.clear();
-        Array<JBCollision> projectedCols = project(item, x, y, w, h, goalX, goalY, filter, check_projectedCols);
-        JBResponse.Result result = check_result;
+        Array<JBCollision> projectedCols = project(item, x, y, w, h, goalX, goalY, filter, s.check_projectedCols);
+        JBResponse.Result result = s.check_result;
         while(projectedCols != null && projectedCols.size > 0){
             JBCollision col = projectedCols.get(0);
             cols.add(col);
@@ -323,6 +381,10 @@ public class JBWorld<E>{
             goalX = result.goalX;
             goalY = result.goalY;
             projectedCols = result.projectedCollisions;
+
+            if(bounds != null && (!inCells(bounds, col.touch.x, col.touch.y, w, h, s) || !inCells(bounds, goalX, goalY, w, h, s))){
+                return null;
+            }
         }
 
         result.set(goalX, goalY);
@@ -333,17 +395,181 @@ public class JBWorld<E>{
         return result;
     }
 
-    public JBResponse.Result move(JBItem item, float goalX, float goalY, CollisionFilter filter){
+    private boolean inCells(Rectangle cells, float x, float y, float w, float h, Scratch s){
+        Rectangle c = s.grid.toCellRect(cellSize, x, y, w, h, s.check_c);
+        return c.x >= cells.x && c.y >= cells.y && c.x + c.width <= cells.x + cells.width && c.y + c.height <= cells.y + cells.height;
+    }
+
+    /** Sets out to the cells covered by an item's rectangle as it moves to a goal. */
+    private Rectangle sweptCells(Rectangle rect, float goalX, float goalY, JBGrid grid, Rectangle out){
+        float tl = min(goalX, rect.x), tt = min(goalY, rect.y);
+        float tw = max(goalX, rect.x) + rect.width - tl, th = max(goalY, rect.y) + rect.height - tt;
+        return grid.toCellRect(cellSize, tl, tt, tw, th, out);
+    }
+
+    public JBResponse.Result move(JBItem<E> item, float goalX, float goalY, CollisionFilter filter){
         JBResponse.Result result = check(item, goalX, goalY, filter);
         update(item, result.goalX, result.goalY);
         return result;
     }
 
-    public static class JBCell{
+    /**
+     * Moves many items at once. Items are processed in the order of the cell they start in, for memory locality.
+     * The resolved position of each item is written back into the goal arrays.
+     * <p>
+     * If a pool is specified, items whose swept cell ranges do not share any cell with another moving item are checked in parallel,
+     * and the rest are moved serially afterwards. A parallel check whose response leaves the item's swept cells, for example a
+     * slide out of an overlap, is discarded and that item is moved serially too. The filter must then be safe to call from several threads.
+     */
+    public void moveAll(JBItem<E>[] items, float[] goalXs, float[] goalYs, int count, CollisionFilter filter, ForkJoinPool pool){
+        if(moveAll_order.length < count){
+            moveAll_order = new long[count];
+            moveAll_dependent = new boolean[count];
+        }
+        long[] order = moveAll_order;
+        boolean[] dependent = moveAll_dependent;
+
+        //sort by starting cell, row by row; the low bits hold the item index
+        for(int i = 0; i < count; i++){
+            Rectangle rect = items[i].rect;
+            int cx = (int) Math.floor(rect.x / cellSize), cy = (int) Math.floor(rect.y / cellSize);
+            order[i] = ((long) ((cy << 16) | (cx & 0xffff)) << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        if(pool == null){
+            for(int i = 0; i < count; i++){
+                moveAllItem(items, goalXs, goalYs, (int) order[i], filter);
+            }
+            return;
+        }
+
+        //items that share a swept cell with another mover depend on the order of moves
+        IntIntMap claims = moveAll_claims;
+        claims.clear();
+        for(int i = 0; i < count; i++){
+            dependent[i] = false;
+        }
+        for(int i = 0; i < count; i++){
+            sweptCells(items[i].rect, goalXs[i], goalYs[i], grid, moveAll_c);
+
+            for(int cy = (int) moveAll_c.y; cy < moveAll_c.y + moveAll_c.height; cy++){
+                for(int cx = (int) moveAll_c.x; cx < moveAll_c.x + moveAll_c.width; cx++){
+                    //keys may wrap around, which only causes false dependencies
+                    int key = (cy << 16) | (cx & 0xffff);
+                    int other = claims.get(key, -1);
+                    if(other == -1){
+                        claims.put(key, i);
+                    }else if(other != i){
+                        dependent[i] = dependent[other] = true;
+                    }
+                }
+            }
+        }
+
+        pool.invoke(new CheckTask(items, goalXs, goalYs, order, dependent, filter, 0, count));
+
+        //apply the parallel results, then move dependent and discarded items serially
+        for(int i = 0; i < count; i++){
+            int index = (int) order[i];
+            if(!dependent[index]){
+                update(items[index], goalXs[index], goalYs[index]);
+            }
+        }
+
+        for(int i = 0; i < count; i++){
+            int index = (int) order[i];
+            if(dependent[index]){
+                moveAllItem(items, goalXs, goalYs, index, filter);
+            }
+        }
+    }
+
+    private void moveAllItem(JBItem<E>[] items, float[] goalXs, float[] goalYs, int index, CollisionFilter filter){
+        JBResponse.Result result = move(items[index], goalXs[index], goalYs[index], filter);
+        goalXs[index] = result.goalX;
+        goalYs[index] = result.goalY;
+    }
+
+    private class CheckTask extends RecursiveAction{
+        private static final int threshold = 64;
+        final JBItem<E>[] items;
+        final float[] goalXs, goalYs;
+        final long[] order;
+        final boolean[] dependent;
+        final CollisionFilter filter;
+        final int start, end;
+
+        CheckTask(JBItem<E>[] items, float[] goalXs, float[] goalYs, long[] order, boolean[] dependent, CollisionFilter filter, int start, int end){
+            this.items = items;
+            this.goalXs = goalXs;
+            this.goalYs = goalYs;
+            this.order = order;
+            this.dependent = dependent;
+            this.filter = filter;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute(){
+            if(end - start > threshold){
+                int mid = (start + end) >>> 1;
+                invokeAll(new CheckTask(items, goalXs, goalYs, order, dependent, filter, start, mid),
+                new CheckTask(items, goalXs, goalYs, order, dependent, filter, mid, end));
+                return;
+            }
+
+            Scratch s = scratch();
+            for(int i = start; i < end; i++){
+                int index = (int) order[i];
+                if(dependent[index]) continue;
+
+                //the response must stay within the cells this item claimed, or it may interact with other movers
+                Rectangle bounds = sweptCells(items[index].rect, goalXs[index], goalYs[index], s.grid, s.check_bounds);
+                JBResponse.Result result = check(items[index], goalXs[index], goalYs[index], filter, bounds);
+                if(result == null){
+                    dependent[index] = true;
+                    continue;
+                }
+                goalXs[index] = result.goalX;
+                goalYs[index] = result.goalY;
+            }
+        }
+    }
+
+    private class Scratch implements JBGrid.TraverseCallback{
+        final JBGrid grid = new JBGrid();
+        final Array<JBCell<E>> getCellsTouchedBySegment_result = new Array<>();
+        final ObjectSet<JBCell<E>> getCellsTouchedBySegment_visited = new ObjectSet<>();
+        final ObjectSet<JBItem<E>> querySegment_visited = new ObjectSet<>();
+        final FloatArray querySegment_weights = new FloatArray();
+        final Vector2 querySegment_ti = new Vector2(), querySegment_n1 = new Vector2(), querySegment_n2 = new Vector2();
+        final Array<JBItem<E>> raycast_items = new Array<>();
+        final FloatArray raycast_fractions = new FloatArray();
+        final ObjectSet<JBItem<?>> project_visited = new ObjectSet<>();
+        final Rectangle project_c = new Rectangle();
+        final ObjectSet<JBItem<E>> project_dictItemsInCellRect = new ObjectSet<>();
+        final ObjectSet<JBItem<?>> check_visited = new ObjectSet<>();
+        final Array<JBCollision> check_cols = new Array<>();
+        final Array<JBCollision> check_projectedCols = new Array<>();
+        final JBResponse.Result check_result = new JBResponse.Result();
+        final Rectangle check_c = new Rectangle(), check_bounds = new Rectangle();
+
+        @Override
+        public void onTraverse(float cx, float cy){
+            JBCell<E> cell = getCell(cx, cy);
+            if(cell != null && getCellsTouchedBySegment_visited.add(cell)){
+                getCellsTouchedBySegment_result.add(cell);
+            }
+        }
+    }
+
+    public static class JBCell<E>{
         public int itemCount = 0;
         public float x;
         public float y;
-        public ObjectSet<JBItem> items = new ObjectSet<>();
+        public Array<JBItem<E>> items = new Array<>(false, 4);
     }
 
     public static class JBItem<E>{
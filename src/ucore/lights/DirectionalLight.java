@@ -128,23 +128,25 @@ public class DirectionalLight extends Light{
             segments[size++] = colorF;
             segments[size++] = 1f;
         }
-        lightMesh.setVertices(segments, 0, size);
 
-        if(!soft || xray) return;
+        if(!soft || xray){
+            setVertices(size, 0);
+            return;
+        }
 
-        size = 0;
+        int softSize = 0;
         for(int i = 0; i < arraySize; i++){
-            segments[size++] = mx[i];
-            segments[size++] = my[i];
-            segments[size++] = colorF;
-            segments[size++] = 1f;
-
-            segments[size++] = mx[i] + softShadowLength * cos;
-            segments[size++] = my[i] + softShadowLength * sin;
-            segments[size++] = zeroColorBits;
-            segments[size++] = 1f;
+            softSegments[softSize++] = mx[i];
+            softSegments[softSize++] = my[i];
+            softSegments[softSize++] = colorF;
+            softSegments[softSize++] = 1f;
+
+            softSegments[softSize++] = mx[i] + softShadowLength * cos;
+            softSegments[softSize++] = my[i] + softShadowLength * sin;
+            softSegments[softSize++] = zeroColorBits;
+            softSegments[softSize++] = 1f;
         }
-        softShadowMesh.setVertices(segments, 0, size);
+        setVertices(size, softSize);
     }
 
     @Override
@@ -53,6 +53,9 @@ public abstract class Light implements Disposable{
     protected Array<Rectangle> cacheRects = new Array<>();
 
     protected float segments[];
+    protected float softSegments[];
+    protected int segmentSize, softSegmentSize;
+    protected boolean meshPending;
     protected float[] mx;
     protected float[] my;
     protected float[] f;
@@ -102,6 +105,36 @@ public abstract class Light implements Disposable{
      */
     abstract void render();
 
+    /**
+     * Sets the amount of vertex data in {@link #segments} and {@link #softSegments}.
+     * The meshes are updated right away, unless lights are being updated in parallel.
+     *
+     * @param softSize size of the soft shadow mesh data, or 0 to leave the soft shadow mesh unchanged
+     */
+    protected void setVertices(int size, int softSize){
+        segmentSize = size;
+        softSegmentSize = softSize;
+        meshPending = true;
+
+        if(rayHandler == null || !rayHandler.isUpdatingParallel()){
+            uploadMesh();
+        }
+    }
+
+    /**
+     * Uploads the vertex data set by {@link #setVertices(int, int)}, if it has not been uploaded yet.
+     * Must be called on the GL thread.
+     */
+    void uploadMesh(){
+        if(!meshPending) return;
+        meshPending = false;
+
+        lightMesh.setVertices(segments, 0, segmentSize);
+        if(softSegmentSize > 0){
+            softShadowMesh.setVertices(softSegments, 0, softSegmentSize);
+        }
+    }
+
     /**
      * Sets light starting position
      *
@@ -393,6 +426,7 @@ public abstract class Light implements Disposable{
         vertexNum = rays + 1;
 
         segments = new float[vertexNum * 8];
+        softSegments = new float[vertexNum * 8];
         mx = new float[vertexNum];
         my = new float[vertexNum];
         f = new float[vertexNum];
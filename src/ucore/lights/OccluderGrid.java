@@ -0,0 +1,191 @@
+package ucore.lights;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import ucore.util.Mathf;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid of occluder rectangles, traversed cell by cell along each ray.
+ * Rectangles are copied into flat arrays when the grid is built, so it must be rebuilt when they move.
+ * Casting only reads the grid, and may be done from several threads at once.
+ */
+final class OccluderGrid{
+    private final float cellSize;
+    private float ox, oy;
+    private int cols, rows;
+
+    /** Rectangle bounds: x, y, width, height. */
+    private float[] rects = new float[0];
+    /** Start of each cell's items in {@link #items}; cell i spans cellStart[i] to cellStart[i + 1]. */
+    private int[] cellStart = new int[1];
+    private int[] items = new int[0];
+    private int[] cursor = new int[0];
+    /** Rectangles that are not fully inside the grid. These are tested against every ray. */
+    private int[] outside = new int[0];
+    private int outsideSize;
+
+    OccluderGrid(float cellSize){
+        this.cellSize = cellSize;
+    }
+
+    /** Rebuilds the grid over the specified bounds. */
+    void build(Array<Rectangle> rectangles, Rectangle bounds){
+        ox = bounds.x;
+        oy = bounds.y;
+        cols = Math.max((int) Math.ceil(bounds.width / cellSize), 1);
+        rows = Math.max((int) Math.ceil(bounds.height / cellSize), 1);
+
+        int size = rectangles.size;
+        if(rects.length < size * 4) rects = new float[size * 4];
+        if(outside.length < size) outside = new int[size];
+        if(cellStart.length != cols * rows + 1) cellStart = new int[cols * rows + 1];
+        else Arrays.fill(cellStart, 0);
+
+        outsideSize = 0;
+        int total = 0;
+
+        //count the items of each cell, stored one index ahead
+        for(int i = 0; i < size; i++){
+            Rectangle r = rectangles.get(i);
+            rects[i * 4] = r.x;
+            rects[i * 4 + 1] = r.y;
+            rects[i * 4 + 2] = r.width;
+            rects[i * 4 + 3] = r.height;
+
+            if(r.x < ox || r.y < oy || r.x + r.width > ox + cols * cellSize || r.y + r.height > oy + rows * cellSize){
+                outside[outsideSize++] = i;
+                continue;
+            }
+
+            int x1 = cellX(r.x), y1 = cellY(r.y), x2 = cellX(r.x + r.width), y2 = cellY(r.y + r.height);
+            for(int cy = y1; cy <= y2; cy++){
+                for(int cx = x1; cx <= x2; cx++){
+                    cellStart[cx + cy * cols + 1]++;
+                    total++;
+                }
+            }
+        }
+
+        for(int i = 1; i < cellStart.length; i++){
+            cellStart[i] += cellStart[i - 1];
+        }
+
+        if(items.length < total) items = new int[total];
+        if(cursor.length < cellStart.length) cursor = new int[cellStart.length];
+        System.arraycopy(cellStart, 0, cursor, 0, cellStart.length);
+
+        for(int i = 0; i < size; i++){
+            float x = rects[i * 4], y = rects[i * 4 + 1], w = rects[i * 4 + 2], h = rects[i * 4 + 3];
+            if(x < ox || y < oy || x + w > ox + cols * cellSize || y + h > oy + rows * cellSize) continue;
+
+            int x1 = cellX(x), y1 = cellY(y), x2 = cellX(x + w), y2 = cellY(y + h);
+            for(int cy = y1; cy <= y2; cy++){
+                for(int cx = x1; cx <= x2; cx++){
+                    items[cursor[cx + cy * cols]++] = i;
+                }
+            }
+        }
+    }
+
+    private int cellX(float x){
+        return Math.min(Math.max((int) ((x - ox) / cellSize), 0), cols - 1);
+    }
+
+    private int cellY(float y){
+        return Math.min(Math.max((int) ((y - oy) / cellSize), 0), rows - 1);
+    }
+
+    /**
+     * Casts a ray and returns the fraction of its length at which it first hits a rectangle, or 1 if it hits nothing.
+     * Traversal stops at the first cell that contains a hit closer than the cell's exit.
+     */
+    float cast(float sx, float sy, float ex, float ey){
+        float dx = ex - sx, dy = ey - sy;
+        float best = 1f;
+
+        for(int i = 0; i < outsideSize; i++){
+            best = Math.min(best, hit(outside[i], sx, sy, dx, dy));
+        }
+
+        //clip the ray to the grid
+        float gx2 = ox + cols * cellSize, gy2 = oy + rows * cellSize;
+        float t0 = 0f, t1 = best;
+
+        if(dx != 0){
+            float a = (ox - sx) / dx, b = (gx2 - sx) / dx;
+            t0 = Math.max(t0, Math.min(a, b));
+            t1 = Math.min(t1, Math.max(a, b));
+        }else if(sx < ox || sx > gx2){
+            return best;
+        }
+
+        if(dy != 0){
+            float a = (oy - sy) / dy, b = (gy2 - sy) / dy;
+            t0 = Math.max(t0, Math.min(a, b));
+            t1 = Math.min(t1, Math.max(a, b));
+        }else if(sy < oy || sy > gy2){
+            return best;
+        }
+
+        if(t0 > t1) return best;
+
+        int cx = cellX(sx + dx * t0), cy = cellY(sy + dy * t0);
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1;
+        float deltaX = dx == 0 ? Float.POSITIVE_INFINITY : Math.abs(cellSize / dx);
+        float deltaY = dy == 0 ? Float.POSITIVE_INFINITY : Math.abs(cellSize / dy);
+        float maxX = dx == 0 ? Float.POSITIVE_INFINITY : (ox + (cx + (stepX > 0 ? 1 : 0)) * cellSize - sx) / dx;
+        float maxY = dy == 0 ? Float.POSITIVE_INFINITY : (oy + (cy + (stepY > 0 ? 1 : 0)) * cellSize - sy) / dy;
+
+        while(true){
+            int cell = cx + cy * cols;
+            for(int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++){
+                best = Math.min(best, hit(items[i], sx, sy, dx, dy));
+            }
+
+            float exit = Math.min(maxX, maxY);
+            if(best <= exit || exit > t1) return best;
+
+            if(maxX < maxY){
+                cx += stepX;
+                maxX += deltaX;
+                if(cx < 0 || cx >= cols) return best;
+            }else{
+                cy += stepY;
+                maxY += deltaY;
+                if(cy < 0 || cy >= rows) return best;
+            }
+        }
+    }
+
+    private float hit(int index, float sx, float sy, float dx, float dy){
+        int i = index * 4;
+        return raycastRect(sx, sy, dx, dy, rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+    }
+
+    /**
+     * Returns the fraction of a ray's length at which it hits a rectangle, or 1 if it does not.
+     * Same as Physics#raycastRect, without the shared result vector.
+     */
+    static float raycastRect(float sx, float sy, float dx, float dy, float rx, float ry, float rw, float rh){
+        float halfx = rw / 2f, halfy = rh / 2f;
+        float x = rx + halfx, y = ry + halfy;
+
+        float scaleX = 1f / dx, scaleY = 1f / dy;
+        int signX = Mathf.sign(scaleX), signY = Mathf.sign(scaleY);
+        float nearTimeX = (x - signX * halfx - sx) * scaleX;
+        float nearTimeY = (y - signY * halfy - sy) * scaleY;
+        float farTimeX = (x + signX * halfx - sx) * scaleX;
+        float farTimeY = (y + signY * halfy - sy) * scaleY;
+
+        if(nearTimeX > farTimeY || nearTimeY > farTimeX) return 1f;
+
+        float nearTime = Math.max(nearTimeX, nearTimeY);
+        float farTime = Math.min(farTimeX, farTimeY);
+
+        if(nearTime >= 1 || farTime <= 0) return 1f;
+
+        return Math.max(nearTime, 0f);
+    }
+}
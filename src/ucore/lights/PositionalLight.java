@@ -158,15 +158,12 @@ public abstract class PositionalLight extends Light{
 
     protected void updateMesh(){
         for(int i = 0; i < rayNum; i++){
-            m_index = i;
             f[i] = 1f;
-            tmpEnd.x = endX[i] + start.x;
-            mx[i] = tmpEnd.x;
-            tmpEnd.y = endY[i] + start.y;
-            my[i] = tmpEnd.y;
-            if(!xray){
-                rayHandler.raycast(this, start, tmpEnd);
-            }
+            mx[i] = endX[i] + start.x;
+            my[i] = endY[i] + start.y;
+        }
+        if(!xray){
+            rayHandler.raycastAll(this, start, rayNum);
         }
         setMesh();
     }
@@ -185,26 +182,28 @@ public abstract class PositionalLight extends Light{
             segments[size++] = colorF;
             segments[size++] = 1 - f[i];
         }
-        lightMesh.setVertices(segments, 0, size);
 
-        if(!soft || xray) return;
+        if(!soft || xray){
+            setVertices(size, 0);
+            return;
+        }
 
         //soft shadow mesh
-        size = 0;
+        int softSize = 0;
         // rays ending points.
         for(int i = 0; i < rayNum; i++){
-            segments[size++] = mx[i];
-            segments[size++] = my[i];
-            segments[size++] = colorF;
+            softSegments[softSize++] = mx[i];
+            softSegments[softSize++] = my[i];
+            softSegments[softSize++] = colorF;
             final float s = (1f - f[i]);
-            segments[size++] = s;
+            softSegments[softSize++] = s;
 
-            segments[size++] = mx[i] + softShadowLength * cos[i];
-            segments[size++] = my[i] + softShadowLength * sin[i];
-            segments[size++] = zeroColorBits;
-            segments[size++] = 0f;
+            softSegments[softSize++] = mx[i] + softShadowLength * cos[i];
+            softSegments[softSize++] = my[i] + softShadowLength * sin[i];
+            softSegments[softSize++] = zeroColorBits;
+            softSegments[softSize++] = 0f;
         }
-        softShadowMesh.setVertices(segments, 0, size);
+        setVertices(size, softSize);
     }
 
 }
@@ -18,9 +18,11 @@ import ucore.core.Timers;
 import ucore.lights.shaders.LightShader;
 import ucore.lights.shaders.PixelShader;
 import ucore.noise.Noise;
-import ucore.util.Physics;
 import ucore.util.RectQuadTree;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
 /**
  * Handler that manages everything related to lights updating and rendering
  * <p>Implements {@link Disposable}
@@ -40,7 +42,6 @@ public class RayHandler implements Disposable{
      * TODO: remove public modifier and add getter
      */
     public static boolean isDiffuse = true;
-    static Vector2 vector = new Vector2();
     static boolean gammaCorrection = false;
     static float gammaCorrectionParameter = 1f;
     /**
@@ -76,8 +77,6 @@ public class RayHandler implements Disposable{
      */
     final Array<Light> disabledLights = new Array<>(false, 16);
     final ShaderProgram lightShader;
-    private final Rectangle r1 = new Rectangle();
-    private final Rectangle r2 = new Rectangle();
     LightMap lightMap;
     ShaderProgram customLightShader = null;
     ShaderProgram customDiffuseShader = null;
@@ -104,8 +103,15 @@ public class RayHandler implements Disposable{
 
     Array<Rectangle> rectangles = new Array<>();
     RectQuadTree tree = new RectQuadTree(4, new Rectangle(-1000, -1000, 2000, 2000));
-    Array<Rectangle> tmprects = new Array<>();
-    private float cdist = -1f;
+    private Rectangle bounds = new Rectangle(-1000, -1000, 2000, 2000);
+    private OccluderGrid grid;
+    /** Raycasting scratch space, separate for each thread that updates lights. */
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<>();
+
+    /** Minimum amount of lights updated by one parallel task. */
+    private static final int parallelChunkSize = 4;
+    private ForkJoinPool pool;
+    private boolean updatingParallel;
 
     /**
      * Class constructor specifying the physics world from where collision
@@ -168,12 +174,27 @@ public class RayHandler implements Disposable{
         isDiffuse = useDiffuse;
     }
 
-    /** Sets the internal quadtree's bounds. */
+    /** Sets the internal quadtree's bounds. These are also the bounds of the occluder grid, if it is used. */
     public void setBounds(float x, float y, float w, float h){
+        bounds.set(x, y, w, h);
         tree = new RectQuadTree(4, new Rectangle(x, y, w, h));
         updateRects();
     }
 
+    /**
+     * Makes lights raycast against a uniform grid of rectangles with the specified cell size instead of the quadtree.
+     * Each ray walks the grid cells it crosses and stops at the first cell containing a hit, instead of querying the tree.
+     * Cell size should be around the size of typical rectangles. Use a size of 0 to switch back to the quadtree.
+     */
+    public void useGrid(float cellSize){
+        grid = cellSize > 0 ? new OccluderGrid(cellSize) : null;
+        updateRects();
+    }
+
+    public boolean gridEnabled(){
+        return grid != null;
+    }
+
     /**
      * Resize the FBO used for intermediate rendering.
      */
@@ -287,11 +308,43 @@ public class RayHandler implements Disposable{
      * @see #render()
      */
     public void update(){
+        if(pool != null && lightList.size >= parallelChunkSize * 2){
+            updatingParallel = true;
+            try{
+                pool.invoke(new UpdateTask(0, lightList.size));
+            }finally{
+                updatingParallel = false;
+            }
+
+            for(int i = 0; i < lightList.size; i++){
+                lightList.get(i).uploadMesh();
+            }
+            return;
+        }
+
         for(Light light : lightList){
             light.update();
         }
     }
 
+    /**
+     * Sets the pool used to compute light meshes in parallel, or null to update lights serially.
+     * Ray end points and vertex arrays are computed by the pool; only uploading the vertices is left to the calling thread.
+     * Lights and rectangles must not be modified while {@link #update()} runs.
+     */
+    public void setParallel(ForkJoinPool pool){
+        this.pool = pool;
+    }
+
+    public boolean isParallel(){
+        return pool != null;
+    }
+
+    /** Returns whether lights are currently being updated in parallel. Lights defer uploading their meshes while this is true. */
+    boolean isUpdatingParallel(){
+        return updatingParallel;
+    }
+
     /**
      * Prepare all lights for rendering.
      * <p>
@@ -624,6 +677,11 @@ public class RayHandler implements Disposable{
 
     /** Updates the internal quadtree's rectangles. Call this every time you modify or move a rectangle. */
     public void updateRects(){
+        if(grid != null){
+            grid.build(rectangles, bounds);
+            return;
+        }
+
         tree.clear();
 
         for(Rectangle rect : rectangles){
@@ -631,13 +689,45 @@ public class RayHandler implements Disposable{
         }
     }
 
-    //TODO more efficient raycast algorithm
-    void raycast(Light light, Vector2 start, Vector2 end){
+    private Scratch scratch(){
+        Scratch s = scratch.get();
+        if(s == null) scratch.set(s = new Scratch());
+        return s;
+    }
 
-        Vector2 closest = vector;
-        cdist = -1f;
+    /**
+     * Casts all rays of a light from one starting point.
+     * The light's mx and my arrays must contain the end point of each ray, and are replaced with the hit points.
+     */
+    void raycastAll(Light light, Vector2 start, int count){
+        Vector2 end = scratch().end;
 
-        closest.set(end);
+        for(int i = 0; i < count; i++){
+            light.m_index = i;
+
+            if(grid == null){
+                raycast(light, start, end.set(light.mx[i], light.my[i]));
+            }else{
+                float endx = light.mx[i], endy = light.my[i];
+                float frac = grid.cast(start.x, start.y, endx, endy);
+                float len = Vector2.dst(start.x, start.y, endx, endy);
+                finish(light, start.x + (endx - start.x) * frac, start.y + (endy - start.y) * frac, frac * len, len);
+            }
+        }
+    }
+
+    void raycast(Light light, Vector2 start, Vector2 end){
+        if(grid != null){
+            float frac = grid.cast(start.x, start.y, end.x, end.y);
+            float len = start.dst(end);
+            finish(light, start.x + (end.x - start.x) * frac, start.y + (end.y - start.y) * frac, frac * len, len);
+            return;
+        }
+
+        Scratch s = scratch();
+        Array<Rectangle> tmprects = s.rects;
+        Rectangle r2 = s.rect;
+        float closest = 1f;
 
         tmprects.clear();
 
@@ -647,35 +737,58 @@ public class RayHandler implements Disposable{
         r2.width -= r2.x;
         r2.height -= r2.y;
 
-        //TODO
         tree.getIntersect(tmprects, r2);
-        //tmprects.addAll(rectangles);
-
-        for(Rectangle rect : tmprects){
-
-            Vector2 vect = Physics.raycastRect(start.x, start.y, end.x, end.y, rect.x + rect.width / 2, rect.y + rect.height / 2, rect.width / 2, rect.height / 2);
-
-            if(vect == null) continue;
 
-            float dist = vect.dst(start);
+        float dx = end.x - start.x, dy = end.y - start.y;
 
-            if(cdist < 0 || dist < cdist){
-                closest.set(vect);
-                cdist = dist;
-            }
+        for(int i = 0; i < tmprects.size; i++){
+            Rectangle rect = tmprects.get(i);
+            closest = Math.min(closest, OccluderGrid.raycastRect(start.x, start.y, dx, dy, rect.x, rect.y, rect.width, rect.height));
         }
 
+        float len = start.dst(end);
+        finish(light, start.x + dx * closest, start.y + dy * closest, closest * len, len);
+    }
+
+    /** Stores the result of the light's current ray, given its hit point, distance to the hit and length. */
+    private void finish(Light light, float hitx, float hity, float dst, float length){
         float noise = 0;
 
         if(light.noisemag > 0)
             noise = Noise.fnoise(light.m_index, Timers.time() / light.noisetime, light.noisescl, light.noisemag);
 
         //closest.sub(start).setLength(closest.len() + Mathf.range(80)).add(start);
-        float dst = closest.dst(start) - Math.abs(noise);
-        float frac = dst / start.dst(end);
+        float frac = (dst - Math.abs(noise)) / length;
 
-        light.mx[light.m_index] = closest.x;
-        light.my[light.m_index] = closest.y;
+        light.mx[light.m_index] = hitx;
+        light.my[light.m_index] = hity;
         light.f[light.m_index] = frac;
     }
+
+    static class Scratch{
+        final Array<Rectangle> rects = new Array<>();
+        final Rectangle rect = new Rectangle();
+        final Vector2 end = new Vector2();
+    }
+
+    class UpdateTask extends RecursiveAction{
+        final int start, end;
+
+        UpdateTask(int start, int end){
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute(){
+            if(end - start > parallelChunkSize * 2){
+                int mid = (start + end) >>> 1;
+                invokeAll(new UpdateTask(start, mid), new UpdateTask(mid, end));
+            }else{
+                for(int i = start; i < end; i++){
+                    lightList.get(i).update();
+                }
+            }
+        }
+    }
 }
@@ -7,6 +7,10 @@ public abstract class Module extends InputAdapter{
     public void update(){
     }
 
+    /** Called at a fixed rate when the core uses a fixed timestep, before {@link #update()}. */
+    public void tick(){
+    }
+
     public void init(){
     }
 
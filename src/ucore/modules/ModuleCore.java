@@ -1,16 +1,21 @@
 package ucore.modules;
 
 import com.badlogic.gdx.ApplicationAdapter;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.ObjectMap;
 import ucore.core.Core;
+import ucore.core.FixedTimestep;
 import ucore.core.Graphics;
 import ucore.core.Inputs;
+import ucore.core.Timers;
+import ucore.entities.EntityDraw;
 import ucore.util.ThreadArray;
 
 public abstract class ModuleCore extends ApplicationAdapter{
     protected ObjectMap<Class<? extends Module>, Module> modules = new ObjectMap<>();
     protected Array<Module> modulearray = new ThreadArray<>();
+    protected FixedTimestep timestep;
 
     public ModuleCore(){
     }
@@ -27,6 +32,22 @@ public abstract class ModuleCore extends ApplicationAdapter{
         Inputs.update();
     }
 
+    /** Called at a fixed rate when a fixed timestep is set, after all module ticks. */
+    public void tick(){
+    }
+
+    /**
+     * Runs logic at a fixed rate: every frame, {@link #tick()} and {@link Module#tick()} are called as many times as
+     * the elapsed time requires, with {@link Timers#delta()} fixed to the tick length.
+     * {@link Timers#update()} is called once before each tick, so it should not be called from update() as well.
+     * Rendering in update() then uses {@link EntityDraw#alpha()} to interpolate between ticks.
+     * Pass 0 to disable.
+     */
+    public void setFixedTimestep(float ticksPerSecond){
+        timestep = ticksPerSecond <= 0 ? null : new FixedTimestep(ticksPerSecond);
+        EntityDraw.setAlpha(1f);
+    }
+
     /** Adds a module to the list. */
     protected <N extends Module> void module(N t){
         modules.put(t.getClass(), t);
@@ -56,6 +77,10 @@ public abstract class ModuleCore extends ApplicationAdapter{
 
     @Override
     public void render(){
+        if(timestep != null){
+            runTicks(Gdx.graphics.getDeltaTime());
+        }
+
         for(Module module : modulearray){
             module.update();
         }
@@ -63,6 +88,25 @@ public abstract class ModuleCore extends ApplicationAdapter{
         update();
     }
 
+    /** Runs the logic ticks for a frame of the specified length, in seconds. Does nothing without a fixed timestep. */
+    protected void runTicks(float seconds){
+        if(timestep == null) return;
+
+        int ticks = timestep.advance(seconds);
+
+        Timers.setTickDelta(timestep.delta());
+        for(int i = 0; i < ticks; i++){
+            Timers.update();
+            for(Module module : modulearray){
+                module.tick();
+            }
+            tick();
+        }
+        Timers.setTickDelta(0f);
+
+        EntityDraw.setAlpha(timestep.alpha());
+    }
+
     @Override
     public void pause(){
         for(Module module : modulearray)
@@ -215,4 +215,130 @@ public class RidgedPerlin{
         return (float) ((value * 1.25) - 1.0);
     }
 
+    /**
+     * Fills an array with {@link #getValue(int, int, float)} for a rectangle of points, row by row:
+     * out[x + y * w] is the value at (x0 + x, y0 + y). Results are the same as calling getValue for each point.
+     * Per-octave row coordinates are computed once per row, and the gradient vectors of a lattice cell are reused
+     * while samples stay inside it.
+     */
+    public void fill(float[] out, int x0, int y0, int w, int h, float frequency){
+        double offset = 1.0;
+        double gain = 2.0;
+
+        //lattice coordinates of the row for each octave: cell, S-curve value and coordinate
+        int[] rowCells = new int[octaves * 2];
+        double[] rowCurves = new double[octaves * 2], rowCoords = new double[octaves * 2];
+        //gradient vector indices of the last cell of each octave
+        int[] lastCells = new int[octaves];
+        int[] vectors = new int[octaves * 8];
+        boolean[] cached = new boolean[octaves];
+
+        for(int y = 0; y < h; y++){
+            double y1 = y0 + y, z1 = 0;
+            y1 *= frequency;
+            z1 *= frequency;
+
+            for(int o = 0; o < octaves; o++){
+                double ny = MakeInt32Range(y1), nz = MakeInt32Range(z1);
+                int iy = (ny > 0.0 ? (int) ny : (int) ny - 1), iz = (nz > 0.0 ? (int) nz : (int) nz - 1);
+                rowCells[o * 2] = iy;
+                rowCells[o * 2 + 1] = iz;
+                rowCurves[o * 2] = SCurve5(ny - (double) iy);
+                rowCurves[o * 2 + 1] = SCurve5(nz - (double) iz);
+                rowCoords[o * 2] = ny;
+                rowCoords[o * 2 + 1] = nz;
+                cached[o] = false;
+
+                y1 *= lacunarity;
+                z1 *= lacunarity;
+            }
+
+            for(int x = 0; x < w; x++){
+                double x1 = x0 + x;
+                x1 *= frequency;
+
+                double signal;
+                double value = 0.0;
+                double weight = 1.0;
+
+                for(int o = 0; o < octaves; o++){
+                    double nx = MakeInt32Range(x1);
+                    int seed = (this.seed + o) & 0x7fffffff;
+
+                    int ix = (nx > 0.0 ? (int) nx : (int) nx - 1);
+                    if(!cached[o] || lastCells[o] != ix){
+                        for(int c = 0; c < 8; c++){
+                            vectors[o * 8 + c] = vectorIndex(ix + (c & 1), rowCells[o * 2] + ((c >> 1) & 1), rowCells[o * 2 + 1] + (c >> 2), seed);
+                        }
+                        lastCells[o] = ix;
+                        cached[o] = true;
+                    }
+
+                    signal = cachedCoherentNoise(nx, rowCoords[o * 2], rowCoords[o * 2 + 1], ix, rowCells[o * 2], rowCells[o * 2 + 1],
+                            SCurve5(nx - (double) ix), rowCurves[o * 2], rowCurves[o * 2 + 1], vectors, o * 8);
+
+                    signal = Math.abs(signal);
+                    signal = offset - signal;
+                    signal *= signal;
+                    signal *= weight;
+
+                    weight = signal * gain;
+                    if(weight > 1.0){
+                        weight = 1.0;
+                    }
+                    if(weight < 0.0){
+                        weight = 0.0;
+                    }
+
+                    value += (signal * spectralWeights[o]);
+                    x1 *= lacunarity;
+                }
+
+                out[x + y * w] = (float) ((value * 1.25) - 1.0);
+            }
+        }
+    }
+
+    /** Returns the gradient vector index of a lattice point, as used by {@link #GradientNoise3D(double, double, double, int, int, int, int)}. */
+    static int vectorIndex(int ix, int iy, int iz, int seed){
+        int vectorIndex = (X_NOISE_GEN * ix + Y_NOISE_GEN * iy + Z_NOISE_GEN * iz + SEED_NOISE_GEN * seed);
+
+        vectorIndex ^= (vectorIndex >> SHIFT_NOISE_GEN);
+        vectorIndex &= 0xff;
+        return vectorIndex;
+    }
+
+    /** {@link #GradientNoise3D(double, double, double, int, int, int, int)} with a precomputed vector index. */
+    static double gradientNoise(double fx, double fy, double fz, int ix, int iy, int iz, int vectorIndex){
+        double xvPoint = (fx - (double) ix);
+        double yvPoint = (fy - (double) iy);
+        double zvPoint = (fz - (double) iz);
+
+        return ((VectorTable.getRandomVectors(vectorIndex, 0) * xvPoint) + (VectorTable.getRandomVectors(vectorIndex, 1) * yvPoint)
+                + (VectorTable.getRandomVectors(vectorIndex, 2) * zvPoint)) * 2.12;
+    }
+
+    /** {@link #GradientCoherentNoise3D(double, double, double, int)} with precomputed cells, S-curve values and corner vector indices. */
+    static double cachedCoherentNoise(double x, double y, double z, int x0, int y0, int z0, double xs, double ys, double zs, int[] vectors, int offset){
+        int x1 = x0 + 1, y1 = y0 + 1, z1 = z0 + 1;
+
+        double n0, n1, ix0, ix1, iy0, iy1;
+        n0 = gradientNoise(x, y, z, x0, y0, z0, vectors[offset]);
+        n1 = gradientNoise(x, y, z, x1, y0, z0, vectors[offset + 1]);
+        ix0 = linearInterp(n0, n1, xs);
+        n0 = gradientNoise(x, y, z, x0, y1, z0, vectors[offset + 2]);
+        n1 = gradientNoise(x, y, z, x1, y1, z0, vectors[offset + 3]);
+        ix1 = linearInterp(n0, n1, xs);
+        iy0 = linearInterp(ix0, ix1, ys);
+        n0 = gradientNoise(x, y, z, x0, y0, z1, vectors[offset + 4]);
+        n1 = gradientNoise(x, y, z, x1, y0, z1, vectors[offset + 5]);
+        ix0 = linearInterp(n0, n1, xs);
+        n0 = gradientNoise(x, y, z, x0, y1, z1, vectors[offset + 6]);
+        n1 = gradientNoise(x, y, z, x1, y1, z1, vectors[offset + 7]);
+        ix1 = linearInterp(n0, n1, xs);
+        iy1 = linearInterp(ix0, ix1, ys);
+
+        return linearInterp(iy0, iy1, zs);
+    }
+
 }
@@ -3,6 +3,9 @@ package ucore.noise;
 import java.util.Random;
 
 public class Simplex{
+    static final double F2 = 0.5 * (Math.sqrt(3.0) - 1.0);
+    static final double G2 = (3.0 - Math.sqrt(3.0)) / 6.0;
+
     static final int grad3[][] = {
             {1, 1, 0}, {-1, 1, 0}, {1, -1, 0}, {-1, -1, 0},
             {1, 0, 1}, {-1, 0, 1}, {1, 0, -1}, {-1, 0, -1},
@@ -100,6 +103,111 @@ public class Simplex{
     }
 
 
+    /**
+     * Fills an array with {@link #octaveNoise2D(double, double, double, double, double)} sampled at integer coordinates.
+     * Values are stored row by row: out[x + y * w] is the noise at (x0 + x, y0 + y), and are the same as sampling each point separately.
+     * Octave frequencies and amplitudes are computed once, and neighbouring samples in the same simplex cell share gradient lookups.
+     */
+    public void fill(float[] out, int x0, int y0, int w, int h, double octaves, double persistence, double scale){
+        int count = 0;
+        while(count < octaves) count++;
+
+        double[] frequencies = new double[count], amplitudes = new double[count];
+        double frequency = scale, amplitude = 1, maxAmplitude = 0;
+
+        for(int i = 0; i < count; i++){
+            frequencies[i] = frequency;
+            amplitudes[i] = amplitude;
+            frequency *= 2;
+            maxAmplitude += amplitude;
+            amplitude *= persistence;
+        }
+
+        //last simplex cell of each octave, and its gradient indices: first corner, middle corner of both triangles, last corner
+        int[] cells = new int[count * 2], grads = new int[count * 4];
+        boolean[] cached = new boolean[count];
+
+        for(int y = 0; y < h; y++){
+            for(int x = 0; x < w; x++){
+                double total = 0;
+
+                for(int i = 0; i < count; i++){
+                    total += (cachedNoise2D((x0 + x) * frequencies[i], (y0 + y) * frequencies[i], i, cells, grads, cached) + 1f) / 2f * amplitudes[i];
+                }
+
+                out[x + y * w] = (float) (total / maxAmplitude);
+            }
+        }
+    }
+
+    /** Same as {@link #raw_noise_2d(double, double)}, reusing the gradient indices of the previous cell of an octave. */
+    private double cachedNoise2D(double x, double y, int octave, int[] cells, int[] grads, boolean[] cached){
+        double n0, n1, n2;
+
+        double s = (x + y) * F2;
+        int i = fastfloor(x + s);
+        int j = fastfloor(y + s);
+
+        double t = (i + j) * G2;
+        double x0 = x - (i - t);
+        double y0 = y - (j - t);
+
+        int i1, j1;
+        if(x0 > y0){
+            i1 = 1;
+            j1 = 0;
+        }else{
+            i1 = 0;
+            j1 = 1;
+        }
+
+        double x1 = x0 - i1 + G2;
+        double y1 = y0 - j1 + G2;
+        double x2 = x0 - 1.0 + 2.0 * G2;
+        double y2 = y0 - 1.0 + 2.0 * G2;
+
+        int g = octave * 4;
+        if(!cached[octave] || cells[octave * 2] != i || cells[octave * 2 + 1] != j){
+            int ii = i & 255;
+            int jj = j & 255;
+            grads[g] = perm[ii + perm[jj]] % 12;
+            grads[g + 1] = perm[ii + 1 + perm[jj]] % 12;
+            grads[g + 2] = perm[ii + perm[jj + 1]] % 12;
+            grads[g + 3] = perm[ii + 1 + perm[jj + 1]] % 12;
+            cells[octave * 2] = i;
+            cells[octave * 2 + 1] = j;
+            cached[octave] = true;
+        }
+
+        int gi0 = grads[g];
+        int gi1 = grads[g + (i1 == 1 ? 1 : 2)];
+        int gi2 = grads[g + 3];
+
+        double t0 = 0.5 - x0 * x0 - y0 * y0;
+        if(t0 < 0) n0 = 0.0;
+        else{
+            t0 *= t0;
+            n0 = t0 * t0 * dot(grad3[gi0], x0, y0);
+        }
+
+        double t1 = 0.5 - x1 * x1 - y1 * y1;
+        if(t1 < 0) n1 = 0.0;
+        else{
+            t1 *= t1;
+            n1 = t1 * t1 * dot(grad3[gi1], x1, y1);
+        }
+
+        double t2 = 0.5 - x2 * x2 - y2 * y2;
+        if(t2 < 0) n2 = 0.0;
+        else{
+            t2 *= t2;
+            n2 = t2 * t2 * dot(grad3[gi2], x2, y2);
+        }
+
+        return 70.0 * (n0 + n1 + n2);
+    }
+
+
     // 3D Multi-octave Simplex noise.
     //
     // For each octave, a higher frequency/lower amplitude function will be added to the original.
@@ -186,6 +186,87 @@ public class VoronoiNoise{
                 (int) (Math.floor(zCandidate)), seed));
     }
 
+    /**
+     * Fills an array with {@link #noise(double, double, double)} for a rectangle of integer points, row by row:
+     * out[x + y * w] is the noise at (x0 + x, y0 + y). Results are the same as sampling each point separately.
+     * The feature point of every cell around the rectangle is computed once and shared by all samples near it.
+     */
+    public void fill(float[] out, int x0, int y0, int w, int h, double frequency){
+        rnd.setSeed(seed);
+        long result = rnd.nextLong();
+
+        //range of cells searched by any sample
+        int minX = Math.min(cell((double) x0 * frequency), cell((double) (x0 + w - 1) * frequency)) - 2;
+        int maxX = Math.max(cell((double) x0 * frequency), cell((double) (x0 + w - 1) * frequency)) + 2;
+        int minZ = Math.min(cell((double) y0 * frequency), cell((double) (y0 + h - 1) * frequency)) - 2;
+        int maxZ = Math.max(cell((double) y0 * frequency), cell((double) (y0 + h - 1) * frequency)) + 2;
+        long cellsW = (long) maxX - minX + 1, cellsH = (long) maxZ - minZ + 1;
+
+        //at high frequencies, most cells would only be used once
+        if(cellsW * cellsH > (long) w * h * 4 + 64){
+            for(int y = 0; y < h; y++){
+                for(int x = 0; x < w; x++){
+                    out[x + y * w] = (float) noise(x0 + x, y0 + y, frequency);
+                }
+            }
+            return;
+        }
+
+        int cw = (int) cellsW;
+        double[] featureX = new double[(int) (cellsW * cellsH)], featureZ = new double[featureX.length];
+
+        for(int zCur = minZ; zCur <= maxZ; zCur++){
+            for(int xCur = minX; xCur <= maxX; xCur++){
+                int index = (xCur - minX) + (zCur - minZ) * cw;
+                featureX[index] = xCur + valueNoise2D(xCur, zCur, seed);
+                featureZ[index] = zCur + valueNoise2D(xCur, zCur, result);
+            }
+        }
+
+        for(int y = 0; y < h; y++){
+            double z = y0 + y;
+            z *= frequency;
+            int zInt = (z > .0 ? (int) z : (int) z - 1);
+
+            for(int x = 0; x < w; x++){
+                double px = x0 + x;
+                px *= frequency;
+                int xInt = (px > .0 ? (int) px : (int) px - 1);
+
+                double minDist = 32000000.0;
+                double xCandidate = 0;
+                double zCandidate = 0;
+
+                for(int zCur = zInt - 2; zCur <= zInt + 2; zCur++){
+                    for(int xCur = xInt - 2; xCur <= xInt + 2; xCur++){
+                        int index = (xCur - minX) + (zCur - minZ) * cw;
+                        double xPos = featureX[index];
+                        double zPos = featureZ[index];
+                        double xDist = xPos - px;
+                        double zDist = zPos - z;
+                        double dist = xDist * xDist + zDist * zDist;
+
+                        if(dist < minDist){
+                            minDist = dist;
+                            xCandidate = xPos;
+                            zCandidate = zPos;
+                        }
+                    }
+                }
+
+                if(useDistance){
+                    out[x + y * w] = (float) getDistance(xCandidate - px, zCandidate - z);
+                }else{
+                    out[x + y * w] = (float) valueNoise2D((int) (Math.floor(xCandidate)), (int) (Math.floor(zCandidate)), seed);
+                }
+            }
+        }
+    }
+
+    private static int cell(double v){
+        return (v > .0 ? (int) v : (int) v - 1);
+    }
+
     public double noise(double x, double y, double z, double frequency){
         // Inside each unit cube, there is a seed point at a random position.  Go
         // through each of the nearby cubes until we find a cube with a seed point
@@ -0,0 +1,150 @@
+package ucore.util;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import ucore.function.Supplier;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool with a small free-object cache per thread and a shared overflow stack.
+ * Threads only synchronize when their cache runs empty or full, and then move objects in batches.
+ * The capacity bounds the shared stack, and each thread cache holds at most {@value #localMax} objects (or the capacity, if lower),
+ * so objects left in the cache of an idle thread never stop other threads from pooling.
+ * Obtains that were served from a cache are counted as hits, newly created objects as misses.
+ */
+public class ConcurrentPool<T> extends Pool<T>{
+    /** Maximum amount of free objects cached by each thread. */
+    private static final int localMax = 32;
+
+    private final Supplier<T> supplier;
+    private final ThreadLocal<Array<T>> local = new ThreadLocal<>();
+    private final Array<T> shared = new Array<>(false, 16);
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+    private volatile int capacity;
+
+    /** @param capacity The maximum amount of free objects kept in the shared stack. */
+    public ConcurrentPool(int capacity, Supplier<T> supplier){
+        super(0, capacity);
+        this.capacity = capacity;
+        this.supplier = supplier;
+    }
+
+    @Override
+    protected T newObject(){
+        return supplier.get();
+    }
+
+    private Array<T> cache(){
+        Array<T> cache = local.get();
+        if(cache == null) local.set(cache = new Array<>(false, localMax + 1));
+        return cache;
+    }
+
+    @Override
+    public T obtain(){
+        Array<T> cache = cache();
+
+        if(cache.size == 0){
+            synchronized(shared){
+                int amount = Math.min(shared.size, localMax / 2);
+                for(int i = 0; i < amount; i++){
+                    cache.add(shared.pop());
+                }
+            }
+        }
+
+        if(cache.size == 0){
+            misses.incrementAndGet();
+            return newObject();
+        }
+
+        hits.incrementAndGet();
+        return cache.pop();
+    }
+
+    @Override
+    public void free(T object){
+        if(object == null) throw new IllegalArgumentException("object cannot be null.");
+        reset(object);
+
+        Array<T> cache = cache();
+        cache.add(object);
+
+        if(cache.size > Math.min(localMax, capacity)){
+            synchronized(shared){
+                //move half of the cache to the shared stack, dropping what does not fit
+                int amount = (cache.size + 1) / 2;
+                for(int i = 0; i < amount; i++){
+                    T flushed = cache.pop();
+                    if(shared.size < capacity) shared.add(flushed);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void freeAll(Array<T> objects){
+        if(objects == null) throw new IllegalArgumentException("objects cannot be null.");
+        for(int i = 0; i < objects.size; i++){
+            T object = objects.get(i);
+            if(object != null) free(object);
+        }
+    }
+
+    @Override
+    public void fill(int size){
+        for(int i = 0; i < size; i++){
+            free(newObject());
+        }
+    }
+
+    /** Clears the shared stack and the cache of the calling thread. Caches of other threads are kept. */
+    @Override
+    public void clear(){
+        Array<T> cache = cache();
+        synchronized(shared){
+            shared.clear();
+        }
+        cache.clear();
+    }
+
+    /** Returns the amount of free objects the calling thread can obtain: those in the shared stack and in its own cache. */
+    @Override
+    public int getFree(){
+        Array<T> cache = cache();
+        synchronized(shared){
+            return shared.size + cache.size;
+        }
+    }
+
+    /**
+     * Sets the maximum amount of free objects kept in the shared stack. Objects over the new capacity are dropped.
+     * Thread caches are trimmed to the new capacity the next time they overflow.
+     */
+    public void setCapacity(int capacity){
+        this.capacity = capacity;
+        synchronized(shared){
+            shared.truncate(Math.max(capacity, 0));
+        }
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    /** Returns how many obtained objects were reused. */
+    public long getHits(){
+        return hits.get();
+    }
+
+    /** Returns how many obtained objects had to be created. */
+    public long getMisses(){
+        return misses.get();
+    }
+
+    public void resetStats(){
+        hits.set(0);
+        misses.set(0);
+    }
+}
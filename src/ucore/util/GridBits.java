@@ -1,24 +1,58 @@
 package ucore.util;
 
 public class GridBits{
-    private final com.badlogic.gdx.utils.Bits bits;
+    private final long[] bits;
     private final int width, height;
 
     public GridBits(int width, int height){
         this.width = width;
         this.height = height;
-        bits = new com.badlogic.gdx.utils.Bits(width * height);
+        bits = new long[(width * height + 63) >>> 6];
     }
 
     public boolean get(int x, int y){
-        return bits.get(x + y*width);
+        int index = x + y * width;
+        int word = index >>> 6;
+        if(word >= bits.length) return false;
+        return (bits[word] & (1L << (index & 63))) != 0;
     }
 
+    /** Sets a bit. Like {@link #get(int, int)}, bits past the end of the grid are ignored; the grid does not grow. */
     public void set(int x, int y, boolean b){
+        int index = x + y * width;
+        int word = index >>> 6;
+        if(word >= bits.length) return;
         if(b){
-            bits.set(x + y * width);
+            bits[word] |= 1L << (index & 63);
         }else{
-            bits.clear(x + y * width);
+            bits[word] &= ~(1L << (index & 63));
+        }
+    }
+
+    /** Returns whether any bit from x1 to x2 (inclusive) is set in a row, testing 64 bits at a time. Coordinates must be in bounds. */
+    public boolean any(int y, int x1, int x2){
+        int from = x1 + y * width, to = x2 + y * width;
+        int first = from >>> 6, last = to >>> 6;
+        long firstMask = -1L << (from & 63), lastMask = -1L >>> (63 - (to & 63));
+
+        if(first == last){
+            return (bits[first] & firstMask & lastMask) != 0;
+        }
+
+        if((bits[first] & firstMask) != 0) return true;
+        for(int i = first + 1; i < last; i++){
+            if(bits[i] != 0) return true;
+        }
+        return (bits[last] & lastMask) != 0;
+    }
+
+    public boolean inBounds(int x, int y){
+        return x >= 0 && y >= 0 && x < width && y < height;
+    }
+
+    public void clear(){
+        for(int i = 0; i < bits.length; i++){
+            bits[i] = 0;
         }
     }
 
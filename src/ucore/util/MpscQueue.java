@@ -0,0 +1,48 @@
+package ucore.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An unbounded lock-free queue for many producer threads and a single consumer thread.
+ * {@link #offer(Object)} may be called from any thread; {@link #poll()} must only be called from one thread at a time.
+ */
+public class MpscQueue<T>{
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+
+    public MpscQueue(){
+        head = new Node<>(null);
+        tail = new AtomicReference<>(head);
+    }
+
+    public void offer(T value){
+        if(value == null) throw new IllegalArgumentException("Value cannot be null.");
+        Node<T> node = new Node<>(value);
+        Node<T> prev = tail.getAndSet(node);
+        //between these two lines, the consumer sees the queue as ending at prev
+        prev.next = node;
+    }
+
+    /** Returns the next value, or null if the queue is empty. */
+    public T poll(){
+        Node<T> next = head.next;
+        if(next == null) return null;
+        T value = next.value;
+        next.value = null;
+        head = next;
+        return value;
+    }
+
+    public boolean isEmpty(){
+        return head.next == null;
+    }
+
+    private static class Node<T>{
+        volatile Node<T> next;
+        T value;
+
+        Node(T value){
+            this.value = value;
+        }
+    }
+}
@@ -1,37 +1,47 @@
 package ucore.util;
 
-import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.Pool;
 import ucore.function.Supplier;
 
-/** A thread-safe wrapper for Pooling. */
+import java.util.concurrent.ConcurrentHashMap;
+
+/** A thread-safe wrapper for Pooling. Each type gets a {@link ConcurrentPool}, so threads rarely contend. */
 public class Pooling{
-    static private final int max = 100;
-    static private final ObjectMap<Class, Pool> typePools = new ObjectMap();
+    static private final int defaultCapacity = 100;
+    static private final ConcurrentHashMap<Class, ConcurrentPool> typePools = new ConcurrentHashMap<>();
+    static private final ConcurrentHashMap<Class, Integer> capacities = new ConcurrentHashMap<>();
 
-    public static synchronized void free (Object object) {
+    public static void free (Object object) {
         if (object == null) throw new IllegalArgumentException("Object cannot be null.");
         Pool pool = typePools.get(object.getClass());
         if (pool == null) return; // Ignore freeing an object that was never retained.
         pool.free(object);
     }
 
-    public static synchronized <T> T obtain(Class<T> type, Supplier<T> sup){
+    public static <T> T obtain(Class<T> type, Supplier<T> sup){
         return get(type, sup).obtain();
     }
 
-    public static synchronized <T> Pool<T> get(Class<T> type, Supplier<T> cons){
-        Pool<T> pool = typePools.get(type);
+    @SuppressWarnings("unchecked")
+    public static <T> ConcurrentPool<T> get(Class<T> type, Supplier<T> cons){
+        ConcurrentPool<T> pool = typePools.get(type);
         if (pool == null) {
-            pool = new Pool<T>(4, max){
-                @Override
-                protected T newObject(){
-                    return cons.get();
-                }
-            };
-            typePools.put(type, pool);
+            pool = typePools.computeIfAbsent(type, t -> new ConcurrentPool<>(capacities.getOrDefault(t, defaultCapacity), cons));
         }
         return pool;
     }
 
+    /** Returns the pool of a type, or null if nothing of that type has been pooled yet. Use this to read pool statistics. */
+    @SuppressWarnings("unchecked")
+    public static <T> ConcurrentPool<T> getPool(Class<T> type){
+        return typePools.get(type);
+    }
+
+    /** Sets how many free objects of a type are kept. Applies to existing and future pools of that type. */
+    public static void setCapacity(Class<?> type, int capacity){
+        capacities.put(type, capacity);
+        ConcurrentPool pool = typePools.get(type);
+        if (pool != null) pool.setCapacity(capacity);
+    }
+
 }
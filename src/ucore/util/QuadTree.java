@@ -2,6 +2,7 @@ package ucore.util;
 
 import com.badlogic.gdx.math.Rectangle;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectMap;
 import ucore.function.BoundingBoxProvider;
 import ucore.function.Consumer;
 
@@ -15,13 +16,19 @@ import java.util.Iterator;
  * @param <T> The type of object this quad tree should contain. An object only requires some way of getting rough bounds.
  * @author xSke
  */
-public class QuadTree<T>{
+public class QuadTree<T> implements SpatialIndex<T>{
     private static Rectangle tmp = new Rectangle();
     private int maxObjectsPerNode;
     private int level;
     private Rectangle bounds;
     private Array<T> objects;
     private BoundingBoxProvider<T> provider;
+    private QuadTree<T> root;
+    private QuadTree<T> parent;
+
+    //root-only: node lookup for tracked objects, and pooled child nodes
+    private ObjectMap<T, QuadTree<T>> nodes;
+    private Array<QuadTree<T>> freeNodes;
 
     private boolean leaf;
     private QuadTree<T> bottomLeftChild;
@@ -43,22 +50,92 @@ public class QuadTree<T>{
             }else{
                 throw new IllegalArgumentException("The provided object does not implement QuadTreeObject! Did you forget to pass a custom BoundingBoxProvider into the quadtree?");
             }
-        });
+        }, null);
     }
 
-    private QuadTree(int maxObjectsPerNode, int level, Rectangle bounds, BoundingBoxProvider provider){
+    private QuadTree(int maxObjectsPerNode, int level, Rectangle bounds, BoundingBoxProvider provider, QuadTree<T> root){
         this.level = level;
         this.bounds = bounds;
         this.maxObjectsPerNode = maxObjectsPerNode;
         this.provider = provider;
+        this.root = root == null ? this : root;
         objects = new ThreadArray<>();
         leaf = true;
+
+        if(root == null){
+            freeNodes = new Array<>(false, 16);
+        }
     }
 
     public void setBoundingBoxProvider(BoundingBoxProvider<T> prov){
         this.provider = prov;
     }
 
+    /**
+     * Enables or disables object tracking on this root node. Tracking remembers the node each object is stored in,
+     * which allows moved objects to be relocated with {@link #update(Object)} and removed regardless of their current position.
+     * Changing this setting clears the tree.
+     */
+    @Override
+    public void setTracking(boolean tracking){
+        if(tracking == isTracking()) return;
+        root.clear();
+        root.nodes = tracking ? new ObjectMap<>() : null;
+    }
+
+    /** Returns whether this tree remembers the node of every inserted object. */
+    @Override
+    public boolean isTracking(){
+        return root.nodes != null;
+    }
+
+    private QuadTree<T> obtainNode(float x, float y, float width, float height){
+        Array<QuadTree<T>> pool = root.freeNodes;
+        QuadTree<T> node;
+        if(pool.size == 0){
+            node = new QuadTree<>(maxObjectsPerNode, level + 1, new Rectangle(x, y, width, height), root.provider, root);
+        }else{
+            node = pool.pop();
+            node.level = level + 1;
+            node.provider = root.provider;
+            node.bounds.set(x, y, width, height);
+        }
+        node.parent = this;
+        return node;
+    }
+
+    private void freeNode(QuadTree<T> node){
+        if(!node.leaf){
+            freeNode(node.bottomLeftChild);
+            freeNode(node.bottomRightChild);
+            freeNode(node.topLeftChild);
+            freeNode(node.topRightChild);
+            node.bottomLeftChild = node.bottomRightChild = node.topLeftChild = node.topRightChild = null;
+            node.leaf = true;
+        }
+        node.objects.clear();
+        node.parent = null;
+        root.freeNodes.add(node);
+    }
+
+    /** Frees all child nodes, leaving this node a leaf. Objects in the children are dropped. */
+    private void freeChildren(){
+        if(leaf) return;
+        freeNode(bottomLeftChild);
+        freeNode(bottomRightChild);
+        freeNode(topLeftChild);
+        freeNode(topRightChild);
+        bottomLeftChild = bottomRightChild = topLeftChild = topRightChild = null;
+        leaf = true;
+    }
+
+    private void addObject(T obj){
+        objects.add(obj);
+        if(root.nodes != null){
+            root.nodes.put(obj, this);
+        }
+    }
+
     private void split(){
         if(!leaf) return;
 
@@ -66,10 +143,10 @@ public class QuadTree<T>{
         float subH = bounds.height / 2;
 
         leaf = false;
-        bottomLeftChild = new QuadTree<>(maxObjectsPerNode, level + 1, new Rectangle(bounds.x, bounds.y, subW, subH), provider);
-        bottomRightChild = new QuadTree<>(maxObjectsPerNode, level + 1, new Rectangle(bounds.x + subW, bounds.y, subW, subH), provider);
-        topLeftChild = new QuadTree<>(maxObjectsPerNode, level + 1, new Rectangle(bounds.x, bounds.y + subH, subW, subH), provider);
-        topRightChild = new QuadTree<>(maxObjectsPerNode, level + 1, new Rectangle(bounds.x + subW, bounds.y + subH, subW, subH), provider);
+        bottomLeftChild = obtainNode(bounds.x, bounds.y, subW, subH);
+        bottomRightChild = obtainNode(bounds.x + subW, bounds.y, subW, subH);
+        topLeftChild = obtainNode(bounds.x, bounds.y + subH, subW, subH);
+        topRightChild = obtainNode(bounds.x + subW, bounds.y + subH, subW, subH);
 
         // Transfer objects to children if they fit entirely in one
         for(Iterator<T> iterator = objects.iterator(); iterator.hasNext(); ){
@@ -85,18 +162,49 @@ public class QuadTree<T>{
 
     private void unsplit(){
         if(leaf) return;
-        leaf = true;
 
-        objects.addAll(bottomLeftChild.objects);
-        objects.addAll(bottomRightChild.objects);
-        objects.addAll(topLeftChild.objects);
-        objects.addAll(topRightChild.objects);
-        bottomLeftChild = bottomRightChild = topLeftChild = topRightChild = null;
+        int start = objects.size;
+        bottomLeftChild.getAllChildren(objects);
+        bottomRightChild.getAllChildren(objects);
+        topLeftChild.getAllChildren(objects);
+        topRightChild.getAllChildren(objects);
+
+        if(root.nodes != null){
+            for(int i = start; i < objects.size; i++){
+                root.nodes.put(objects.get(i), this);
+            }
+        }
+
+        freeChildren();
+    }
+
+    /**
+     * Merges underfull nodes from this node upwards, like an untracked {@link #remove(Object)} does on its way back up.
+     * Stops at the first node that still holds too many objects, as all of its parents hold at least as many.
+     */
+    private void collapse(){
+        for(QuadTree<T> node = leaf ? parent : this; node != null; node = node.parent){
+            if(node.countObjects(maxObjectsPerNode + 1) > maxObjectsPerNode) return;
+            node.unsplit();
+        }
+    }
+
+    /** Returns the total number of objects in this node and its children, counting no further than the limit. */
+    private int countObjects(int limit){
+        int count = objects.size;
+        if(!leaf){
+            if(count < limit) count += topLeftChild.countObjects(limit - count);
+            if(count < limit) count += topRightChild.countObjects(limit - count);
+            if(count < limit) count += bottomLeftChild.countObjects(limit - count);
+            if(count < limit) count += bottomRightChild.countObjects(limit - count);
+        }
+        return count;
     }
 
     /**
      * Inserts an object into this node or its child nodes. This will split a leaf node if it exceeds the object limit.
      */
+    @Override
     public void insert(T obj){
         provider.getBoundingBox(obj, tmp);
         if(!bounds.overlaps(tmp)){
@@ -109,7 +217,7 @@ public class QuadTree<T>{
 
         if(leaf){
             // Leaf, so no need to add to children, just add to root
-            objects.add(obj);
+            addObject(obj);
         }else{
             provider.getBoundingBox(obj, tmp);
             // Add to relevant child, or root if can't fit completely in a child
@@ -117,15 +225,60 @@ public class QuadTree<T>{
             if(child != null){
                 child.insert(obj);
             }else{
-                objects.add(obj);
+                addObject(obj);
             }
         }
     }
 
+    /**
+     * Relocates an object whose bounds may have changed since it was inserted.
+     * Objects that still belong to their current node are left alone; objects that are not in the tree yet are inserted.
+     * Requires tracking to be enabled on the root node.
+     */
+    @Override
+    public void update(T obj){
+        if(root.nodes == null) throw new IllegalStateException("Tracking is not enabled for this quadtree!");
+
+        QuadTree<T> node = root.nodes.get(obj);
+        if(node == null){
+            root.insert(obj);
+            return;
+        }
+
+        provider.getBoundingBox(obj, tmp);
+        if(node.holds(tmp)) return;
+
+        node.objects.removeValue(obj, true);
+        root.nodes.remove(obj);
+        node.collapse();
+        root.insert(obj);
+    }
+
+    /** Returns whether a bounding box would still be stored in this node if it was re-inserted. */
+    private boolean holds(Rectangle box){
+        if(this == root){
+            if(!bounds.overlaps(box)) return false;
+        }else if(!bounds.contains(box)){
+            return false;
+        }
+        return leaf || getFittingChild(box) == null;
+    }
+
     /**
      * Removes an object from this node or its child nodes.
      */
+    @Override
     public void remove(T obj){
+        if(root.nodes != null && this == root){
+            // Tracked, so the owning node is known regardless of where the object is now
+            QuadTree<T> node = root.nodes.remove(obj);
+            if(node != null){
+                node.objects.removeValue(obj, true);
+                node.collapse();
+            }
+            return;
+        }
+
         if(leaf){
             // Leaf, no children, remove from root
             objects.removeValue(obj, true);
@@ -145,13 +298,12 @@ public class QuadTree<T>{
         }
     }
 
-    /** Removes all objects. */
+    /** Removes all objects. Child nodes are returned to the root's node pool. */
+    @Override
     public void clear(){
+        if(this == root && nodes != null) nodes.clear();
         objects.clear();
-        if(bottomLeftChild != null) bottomLeftChild.clear();
-        if(bottomRightChild != null) bottomRightChild.clear();
-        if(topLeftChild != null) topLeftChild.clear();
-        if(topRightChild != null) topRightChild.clear();
+        freeChildren();
     }
 
     private QuadTree<T> getFittingChild(Rectangle boundingBox){
@@ -205,6 +357,7 @@ public class QuadTree<T>{
      * <p>
      * This will never result in false positives.
      */
+    @Override
     public void getIntersect(Consumer<T> out, Rectangle toCheck){
         if(!leaf){
             if(topLeftChild.bounds.overlaps(toCheck)) topLeftChild.getIntersect(out, toCheck);
@@ -226,6 +379,7 @@ public class QuadTree<T>{
      * <p>
      * This will result in false positives, but never a false negative.
      */
+    @Override
     public void getIntersect(Array<T> out, Rectangle toCheck){
         if(!leaf){
             if(topLeftChild.bounds.overlaps(toCheck)) topLeftChild.getIntersect(out, toCheck);
@@ -0,0 +1,135 @@
+package ucore.util;
+
+import java.util.Arrays;
+
+/**
+ * Maps int IDs to objects stored in a dense array of slots. Each ID packs a slot index in its low {@value #slotBits} bits
+ * and the generation of that slot in its high bits, so a lookup is a mask and two array reads, and the map never hashes or rehashes.
+ * <p>
+ * IDs are issued by {@link #add(Object)}, which reuses removed slots, so storage grows with the amount of objects held at once.
+ * Removing an object increments the generation of its slot, so its ID becomes stale and no longer resolves, even once the slot is reused.
+ * Generations wrap around after {@code 2^(32 - slotBits)} reuses of one slot.
+ * <p>
+ * IDs issued by another map, such as a server's, can be placed with {@link #put(int, Object)}. They keep their slot, so they stay dense as well.
+ */
+public class SlotMap<T>{
+    public static final int slotBits = 20;
+    private static final int slotMask = (1 << slotBits) - 1, generation = 1 << slotBits;
+
+    private Object[] values = new Object[16];
+    /** ID of the object in each slot, or the next ID to issue for free slots. */
+    private int[] ids = new int[16];
+    /** Free slots, reused before new ones. May contain slots that were taken by {@link #put(int, Object)} since. */
+    private int[] free = new int[16];
+    private int freeSize;
+    /** Amount of slots in use or freed; slots past this index have never been used. */
+    private int used;
+    private int size;
+
+    /** Returns the slot index of an ID. */
+    public static int slot(int id){
+        return id & slotMask;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int id){
+        int slot = id & slotMask;
+        return slot < used && ids[slot] == id ? (T) values[slot] : null;
+    }
+
+    /** Stores an object in a free slot and returns its new ID. */
+    public int add(T value){
+        if(value == null) throw new IllegalArgumentException("Value cannot be null.");
+
+        int slot = -1;
+        while(freeSize > 0){
+            int s = free[--freeSize];
+            if(values[s] == null){
+                slot = s;
+                break;
+            }
+        }
+
+        if(slot == -1){
+            slot = used;
+            ensureSlots(slot + 1);
+        }
+
+        values[slot] = value;
+        size++;
+        return ids[slot];
+    }
+
+    /**
+     * Stores an object under an ID issued by another map. Its slot is taken from the ID.
+     * An object with a different ID in that slot is replaced, and its ID becomes stale.
+     */
+    public void put(int id, T value){
+        if(value == null) throw new IllegalArgumentException("Value cannot be null.");
+
+        int slot = id & slotMask;
+        ensureSlots(slot + 1);
+        if(values[slot] == null) size++;
+        values[slot] = value;
+        ids[slot] = id;
+    }
+
+    /** Removes and returns the object with this ID, making the ID stale. */
+    @SuppressWarnings("unchecked")
+    public T remove(int id){
+        int slot = id & slotMask;
+        if(slot >= used || ids[slot] != id || values[slot] == null) return null;
+
+        T value = (T) values[slot];
+        values[slot] = null;
+        ids[slot] = id + generation;
+        size--;
+        pushFree(slot);
+        return value;
+    }
+
+    public boolean containsKey(int id){
+        return get(id) != null;
+    }
+
+    /** Removes all objects, making all IDs stale. Slots are kept for reuse. */
+    public void clear(){
+        freeSize = 0;
+        for(int i = used - 1; i >= 0; i--){
+            if(values[i] != null){
+                values[i] = null;
+                ids[i] += generation;
+            }
+            pushFree(i);
+        }
+        size = 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    private void pushFree(int slot){
+        if(freeSize == free.length) free = Arrays.copyOf(free, freeSize * 2);
+        free[freeSize++] = slot;
+    }
+
+    /** Makes sure that slots up to the specified amount exist. New slots other than the last are marked as free. */
+    private void ensureSlots(int amount){
+        if(amount <= used) return;
+        if(amount > slotMask + 1) throw new IllegalStateException("SlotMap is full.");
+
+        if(amount > values.length){
+            int length = values.length;
+            while(length < amount) length *= 2;
+            values = Arrays.copyOf(values, length);
+            ids = Arrays.copyOf(ids, length);
+        }
+
+        for(int i = amount - 1; i >= used; i--){
+            ids[i] = i;
+            if(i != amount - 1) pushFree(i);
+        }
+        used = amount;
+    }
+}
@@ -0,0 +1,189 @@
+package ucore.util;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import ucore.function.BoundingBoxProvider;
+import ucore.function.Consumer;
+import ucore.util.QuadTree.QuadTreeObject;
+
+/**
+ * A uniform grid that stores objects in the cell containing the bottom left corner of their bounds.
+ * Works best when objects are evenly spread out and no larger than a few cells.
+ * <p>
+ * The grid is unbounded; cell coordinates are packed into int keys, wrapping every 65536 cells.
+ * Only cells that hold objects are stored, and emptied cells are recycled.
+ * <p>
+ * Queries are widened by the largest bounds inserted since the last {@link #clear()}. When the grid is only updated and never cleared,
+ * that maximum does not shrink after large objects shrink or are removed; queries then check more cells than needed, but never miss objects.
+ *
+ * @param <T> The type of object this grid should contain.
+ */
+public class SpatialHash<T> implements SpatialIndex<T>{
+    private static final int absent = -1;
+
+    private final float cellSize;
+    private final IntMap<Array<T>> cells = new IntMap<>();
+    private final Array<Array<T>> freeCells = new Array<>(false, 16);
+    private final ObjectIntMap<T> keys = new ObjectIntMap<>();
+    private final Rectangle tmp = new Rectangle();
+    //queries may run on several threads at once
+    private final ThreadLocal<Rectangle> queryRect = new ThreadLocal<>();
+    private BoundingBoxProvider<T> provider;
+    //largest bounds inserted since the last clear, used to widen queries
+    private float maxWidth, maxHeight;
+
+    /** @param cellSize The size of each cell. Should be around the size of the most common object. */
+    public SpatialHash(float cellSize){
+        this.cellSize = cellSize;
+        this.provider = (obj, out) -> {
+            if(obj instanceof QuadTreeObject){
+                ((QuadTreeObject) obj).getHitbox(out);
+            }else{
+                throw new IllegalArgumentException("The provided object does not implement QuadTreeObject! Did you forget to pass a custom BoundingBoxProvider into the grid?");
+            }
+        };
+    }
+
+    private static int getKey(int x, int y){
+        return (x << 16) | (y & 0xffff);
+    }
+
+    public void setBoundingBoxProvider(BoundingBoxProvider<T> prov){
+        this.provider = prov;
+    }
+
+    public float getCellSize(){
+        return cellSize;
+    }
+
+    private int cell(float v){
+        return (int) Math.floor(v / cellSize);
+    }
+
+    @Override
+    public void insert(T obj){
+        provider.getBoundingBox(obj, tmp);
+        maxWidth = Math.max(maxWidth, tmp.width);
+        maxHeight = Math.max(maxHeight, tmp.height);
+
+        int key = getKey(cell(tmp.x), cell(tmp.y));
+        Array<T> arr = cells.get(key);
+        if(arr == null){
+            arr = freeCells.size > 0 ? freeCells.pop() : new Array<>(false, 4);
+            cells.put(key, arr);
+        }
+        arr.add(obj);
+        keys.put(obj, key);
+    }
+
+    @Override
+    public void remove(T obj){
+        if(!keys.containsKey(obj)) return;
+        int key = keys.remove(obj, absent);
+        Array<T> arr = cells.get(key);
+        if(arr != null && arr.removeValue(obj, true) && arr.size == 0){
+            cells.remove(key);
+            freeCells.add(arr);
+        }
+    }
+
+    @Override
+    public void update(T obj){
+        int key = keys.get(obj, absent);
+        //absent is also a valid key, so only check containment when it is returned
+        if(key == absent && !keys.containsKey(obj)){
+            insert(obj);
+            return;
+        }
+
+        provider.getBoundingBox(obj, tmp);
+        if(key == getKey(cell(tmp.x), cell(tmp.y)) && tmp.width <= maxWidth && tmp.height <= maxHeight) return;
+
+        remove(obj);
+        insert(obj);
+    }
+
+    /** Removes all objects. Cell arrays are kept for reuse. */
+    @Override
+    public void clear(){
+        for(Array<T> arr : cells.values()){
+            arr.clear();
+            freeCells.add(arr);
+        }
+        cells.clear();
+        keys.clear();
+        maxWidth = maxHeight = 0f;
+    }
+
+    private Rectangle queryRect(){
+        Rectangle r = queryRect.get();
+        if(r == null) queryRect.set(r = new Rectangle());
+        return r;
+    }
+
+    @Override
+    public void getIntersect(Consumer<T> out, Rectangle toCheck){
+        Rectangle tmp = queryRect();
+        int minx = cell(toCheck.x - maxWidth), miny = cell(toCheck.y - maxHeight);
+        int maxx = Math.min(cell(toCheck.x + toCheck.width), minx + 0xffff), maxy = Math.min(cell(toCheck.y + toCheck.height), miny + 0xffff);
+
+        for(int cx = minx; cx <= maxx; cx++){
+            for(int cy = miny; cy <= maxy; cy++){
+                Array<T> arr = cells.get(getKey(cx, cy));
+                if(arr == null) continue;
+
+                for(int i = 0; i < arr.size; i++){
+                    T obj = arr.get(i);
+                    provider.getBoundingBox(obj, tmp);
+                    if(tmp.overlaps(toCheck)){
+                        out.accept(obj);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the out parameter with any objects that intersect the given rectangle.
+     * Unlike the quadtree, candidates are filtered by their bounds.
+     */
+    @Override
+    public void getIntersect(Array<T> out, Rectangle toCheck){
+        Rectangle tmp = queryRect();
+        int minx = cell(toCheck.x - maxWidth), miny = cell(toCheck.y - maxHeight);
+        int maxx = Math.min(cell(toCheck.x + toCheck.width), minx + 0xffff), maxy = Math.min(cell(toCheck.y + toCheck.height), miny + 0xffff);
+
+        for(int cx = minx; cx <= maxx; cx++){
+            for(int cy = miny; cy <= maxy; cy++){
+                Array<T> arr = cells.get(getKey(cx, cy));
+                if(arr == null) continue;
+
+                for(int i = 0; i < arr.size; i++){
+                    T obj = arr.get(i);
+                    provider.getBoundingBox(obj, tmp);
+                    if(tmp.overlaps(toCheck)){
+                        out.add(obj);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Location tracking is always enabled for grids. */
+    @Override
+    public void setTracking(boolean tracking){
+
+    }
+
+    @Override
+    public boolean isTracking(){
+        return true;
+    }
+
+    /** Returns the number of objects in this grid. */
+    public int size(){
+        return keys.size;
+    }
+}
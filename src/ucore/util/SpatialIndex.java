@@ -0,0 +1,36 @@
+package ucore.util;
+
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.utils.Array;
+import ucore.function.Consumer;
+
+/**
+ * A broadphase structure that stores objects by their rough bounds.
+ *
+ * @param <T> The type of object stored.
+ */
+public interface SpatialIndex<T>{
+
+    /** Inserts an object using its current bounds. */
+    void insert(T obj);
+
+    /** Removes an object from this index. */
+    void remove(T obj);
+
+    /** Relocates an object whose bounds may have changed, or inserts it if it is not present. Requires tracking. */
+    void update(T obj);
+
+    /** Removes all objects. */
+    void clear();
+
+    /** Processes objects that intersect the given rectangle. */
+    void getIntersect(Consumer<T> out, Rectangle toCheck);
+
+    /** Fills the out array with objects that may intersect the given rectangle. */
+    void getIntersect(Array<T> out, Rectangle toCheck);
+
+    /** Enables or disables tracking of object locations, which is required for {@link #update(Object)}. */
+    void setTracking(boolean tracking);
+
+    boolean isTracking();
+}
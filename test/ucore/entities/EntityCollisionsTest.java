@@ -0,0 +1,77 @@
+package ucore.entities;
+
+import com.badlogic.gdx.math.Rectangle;
+import org.junit.Test;
+import ucore.entities.impl.SolidEntity;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class EntityCollisionsTest{
+    static final float tilesize = 8f;
+    /** Tiles at this x and above are solid. */
+    static final int wall = 20;
+    /** Left face of the wall with centered tile hitboxes. */
+    static final float face = (wall - 0.5f) * tilesize;
+
+    @Test
+    public void sweptMovesDoNotTunnelThroughWalls(){
+        EntityCollisions collisions = collisions(false);
+        assertNoTunneling(collisions, face);
+    }
+
+    @Test
+    public void steppedMovesDoNotTunnelThroughWalls(){
+        EntityCollisions collisions = collisions(false);
+        collisions.setSwept(false);
+        assertNoTunneling(collisions, face);
+    }
+
+    @Test
+    public void sweptMovesStopAtOversizedTileHitboxes(){
+        //hitboxes reach half a tile past their own tile
+        EntityCollisions collisions = collisions(true);
+        assertNoTunneling(collisions, face - tilesize / 2f);
+    }
+
+    /** Moves entities into the wall many times by sub-pixel amounts, and checks that their right edge never passes the wall face. */
+    static void assertNoTunneling(EntityCollisions collisions, float face){
+        Random random = new Random(0);
+        TestEntity entity = new TestEntity();
+
+        for(int trial = 0; trial < 2000; trial++){
+            entity.x = face - 40f - random.nextFloat() * 40f;
+            entity.y = random.nextFloat() * 200f;
+
+            for(int move = 0; move < 60; move++){
+                float dx = random.nextFloat() * 3f, dy = (random.nextFloat() - 0.5f) * 2f;
+                collisions.move(entity, dx, dy);
+                float edge = entity.x + TestEntity.size / 2f;
+                assertTrue("entity passed the wall face at " + face + ": edge at " + edge, edge <= face + 0.01f);
+            }
+        }
+    }
+
+    static EntityCollisions collisions(boolean oversized){
+        EntityCollisions collisions = new EntityCollisions();
+        float size = oversized ? tilesize * 2f : tilesize;
+        collisions.setCollider(tilesize, (x, y) -> x >= wall, (x, y, out) -> out.setSize(size).setCenter(x * tilesize, y * tilesize));
+        collisions.setSwept(true);
+        return collisions;
+    }
+
+    static class TestEntity extends SolidEntity{
+        static final float size = 6f;
+
+        @Override
+        public void getHitbox(Rectangle rectangle){
+            rectangle.setSize(size).setCenter(x, y);
+        }
+
+        @Override
+        public void getHitboxTile(Rectangle rectangle){
+            getHitbox(rectangle);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package ucore.modules;
+
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.After;
+import org.junit.Test;
+import ucore.core.Timers;
+
+import static org.junit.Assert.*;
+
+public class ModuleCoreTest{
+
+    @After
+    public void reset(){
+        Timers.clear();
+        Timers.resetTime(0f);
+    }
+
+    @Test
+    public void timersFireOnTheSameTickAtAnyFrameRate(){
+        IntArray slow = fireTicks(30f);
+        IntArray fast = fireTicks(144f);
+        IntArray uneven = fireTicks(47f);
+
+        assertEquals(3, slow.size);
+        assertEquals(slow, fast);
+        assertEquals(slow, uneven);
+    }
+
+    /** Runs two seconds of frames at the specified rate and returns the ticks on which each timer fired. */
+    private IntArray fireTicks(float framesPerSecond){
+        reset();
+
+        TestCore core = new TestCore();
+        core.setFixedTimestep(60f);
+
+        IntArray fired = new IntArray();
+        Timers.run(10f, () -> fired.add(core.ticks));
+        Timers.run(45.5f, () -> fired.add(core.ticks));
+        Timers.run(90f, () -> fired.add(core.ticks));
+
+        for(int i = 0; i < framesPerSecond * 2; i++){
+            core.runTicks(1f / framesPerSecond);
+        }
+
+        return fired;
+    }
+
+    static class TestCore extends ModuleCore{
+        int ticks;
+
+        @Override
+        public void init(){
+        }
+
+        @Override
+        public void tick(){
+            ticks++;
+        }
+    }
+}